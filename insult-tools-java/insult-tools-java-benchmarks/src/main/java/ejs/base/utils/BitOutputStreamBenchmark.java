@@ -0,0 +1,60 @@
+package ejs.base.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bit packing of a second of speech, 40 voiced frames, reported per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitOutputStreamBenchmark {
+
+  private static final int FRAMES = 40;
+
+  // field widths of a voiced frame: energy, repeat, pitch and K1 to K10
+  private static final int[] FIELD_BITS = { 4, 1, 6, 5, 5, 4, 4, 4, 4, 4, 3, 3, 3 };
+
+  private int[] values;
+  private BitOutputStream bitOutputStream;
+
+  @Setup
+  public void setUp() {
+    values = new int[FIELD_BITS.length];
+    for (int i = 0; i < values.length; i++) {
+      // alternate the bits so nothing can be folded away
+      values[i] = 0x5555 >>> i & ((1 << FIELD_BITS[i]) - 1);
+    }
+    bitOutputStream = new BitOutputStream(new ByteArrayOutputStream(FRAMES * 8));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FRAMES)
+  public BitOutputStream writeBits() throws IOException {
+    bitOutputStream.reset();
+    for (int frame = 0; frame < FRAMES; frame++) {
+      for (int i = 0; i < FIELD_BITS.length; i++) {
+        bitOutputStream.writeBits(values[i], FIELD_BITS[i]);
+      }
+    }
+    return bitOutputStream;
+  }
+
+}
@@ -0,0 +1,62 @@
+package org.codebrothers.speechengine.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+
+/**
+ * Finds the example phrase pack for the benchmarks that parse, lay out or render it.
+ *
+ * The pack is looked for under the working directory and each of its parents, so the benchmarks run from the module,
+ * the project or the repository directory alike. Set the "speechengine.phrasepack" system property to use another
+ * pack, e.g. a bigger one to see how things scale. JMH passes the host JVM's arguments on to its forks, so a -D on the
+ * command line reaches the benchmarks.
+ */
+public class ExamplePhrasePack {
+
+  /**
+   * System property naming the phrase pack directory to benchmark with instead of the example.
+   */
+  public static final String PHRASE_PACK_PROPERTY = "speechengine.phrasepack";
+
+  private static final Path EXAMPLE_PATH =
+          Paths.get("insult-tools-java-tools", "src", "main", "resources", "phrasepacks", "example");
+
+  private static final String PROJECT_DIRECTORY = "insult-tools-java";
+
+  private static final String WORD_BANK_DIRECTORY = "generatedaudio";
+
+  private ExamplePhrasePack() {
+  }
+
+  /**
+   * The phrase pack directory.
+   */
+  public static Path phrasePackPath() {
+    String property = System.getProperty(PHRASE_PACK_PROPERTY);
+    if (property != null) {
+      return Paths.get(property);
+    }
+
+    for (Path directory = Paths.get("").toAbsolutePath(); directory != null; directory = directory.getParent()) {
+      for (Path candidate : new Path[] { directory.resolve(EXAMPLE_PATH),
+              directory.resolve(PROJECT_DIRECTORY).resolve(EXAMPLE_PATH) }) {
+        if (Files.isDirectory(candidate)) {
+          return candidate;
+        }
+      }
+    }
+    throw new IllegalStateException(MessageFormat.format(
+            "Couldn''t find the example phrase pack from \"{0}\". Set -D{1} to its directory.",
+            Paths.get("").toAbsolutePath(), PHRASE_PACK_PROPERTY));
+  }
+
+  /**
+   * The word bank generated for the phrase pack, in its "generatedaudio" directory.
+   */
+  public static Path wordBankPath() {
+    return phrasePackPath().resolve(WORD_BANK_DIRECTORY);
+  }
+
+}
@@ -0,0 +1,74 @@
+package org.codebrothers.speechengine.benchmark;
+
+import java.util.Random;
+
+import v9t9.engine.speech.encode.LPCEncoderParams;
+import v9t9.engine.speech.encode.LPCSpeechAnalyzer;
+
+/**
+ * Synthetic, repeatable input for the encoder benchmarks.
+ */
+public class SpeechSignals {
+
+  // a low male voice
+  private static final double PITCH_HZ = 120.0;
+
+  // first two formants of an "ah"
+  private static final double[] FORMANT_HZ = { 700.0, 1220.0 };
+  private static final double FORMANT_BANDWIDTH_HZ = 100.0;
+
+  private static final double NOISE_LEVEL = 0.01;
+
+  private SpeechSignals() {
+  }
+
+  /**
+   * The parameters the analyzer would use for a recording at the given rate.
+   */
+  public static LPCEncoderParams encoderParams(int hertz) {
+    return new LPCEncoderParams(hertz, LPCSpeechAnalyzer.PLAYBACK_HZ, LPCSpeechAnalyzer.FRAMES_PER_SECOND,
+            LPCSpeechAnalyzer.ORDER);
+  }
+
+  /**
+   * A voiced vowel, a pulse train through two formant resonators with a little noise, scaled into the -1 to 1 range
+   * that WavFile reads samples as.
+   */
+  public static float[] voiced(int hertz, int samples) {
+    Random random = new Random(samples);
+    double[] signal = new double[samples];
+    double period = hertz / PITCH_HZ;
+    for (int i = 0; i < samples; i++) {
+      signal[i] = (i % period < 1.0 ? 1.0 : 0.0) + random.nextGaussian() * NOISE_LEVEL;
+    }
+
+    for (double formant : FORMANT_HZ) {
+      resonate(signal, hertz, formant);
+    }
+
+    double peak = 0.0;
+    for (double sample : signal) {
+      peak = Math.max(peak, Math.abs(sample));
+    }
+    float[] content = new float[samples];
+    for (int i = 0; i < samples; i++) {
+      content[i] = (float) (signal[i] * 0.9 / peak);
+    }
+    return content;
+  }
+
+  private static void resonate(double[] signal, int hertz, double frequency) {
+    double radius = Math.exp(-Math.PI * FORMANT_BANDWIDTH_HZ / hertz);
+    double a1 = 2.0 * radius * Math.cos(2.0 * Math.PI * frequency / hertz);
+    double a2 = -radius * radius;
+    double y1 = 0.0;
+    double y2 = 0.0;
+    for (int i = 0; i < signal.length; i++) {
+      double y = signal[i] + a1 * y1 + a2 * y2;
+      y2 = y1;
+      y1 = y;
+      signal[i] = y;
+    }
+  }
+
+}
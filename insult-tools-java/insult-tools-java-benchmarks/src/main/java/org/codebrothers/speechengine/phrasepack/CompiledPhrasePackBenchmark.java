@@ -0,0 +1,61 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.ExamplePhrasePack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating a random phrase from the primary bank of the compiled example phrase pack, as word ids and as text.
+ * Compare with {@link PhraseBankBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledPhrasePackBenchmark {
+
+  private CompiledPhrasePack.Generator generator;
+  private int primaryBank;
+  private final SplittableRandom random = new SplittableRandom();
+  private final StringBuilder buffer = new StringBuilder();
+
+  @Setup
+  public void setUp() throws IOException {
+    CompiledPhrasePack compiledPhrasePack =
+            CompiledPhrasePack.compile(new PhrasePackParser().parse(ExamplePhrasePack.phrasePackPath()));
+    primaryBank = compiledPhrasePack.getBank("primary");
+    generator = compiledPhrasePack.newGenerator();
+  }
+
+  @Benchmark
+  public int generateWordIds() {
+    return generator.generate(primaryBank, random);
+  }
+
+  @Benchmark
+  public StringBuilder generateText() {
+    return generator.generate(primaryBank, random, buffer);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public int generateWordIdsConcurrently() {
+    return generator.generate(primaryBank, random);
+  }
+
+}
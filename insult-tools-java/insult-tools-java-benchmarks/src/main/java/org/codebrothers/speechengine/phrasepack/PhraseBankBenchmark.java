@@ -0,0 +1,68 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.ExamplePhrasePack;
+import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating a random phrase from the primary bank of the example phrase pack, on one thread and on every core. Each
+ * thread has its own state, so its own random and buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhraseBankBenchmark {
+
+  private PhraseBank primaryPhraseBank;
+  private final SplittableRandom random = new SplittableRandom();
+  private final StringBuilder buffer = new StringBuilder();
+
+  @Setup
+  public void setUp() throws IOException {
+    PhrasePack phrasePack = new PhrasePackParser().parse(ExamplePhrasePack.phrasePackPath());
+    primaryPhraseBank = phrasePack.getPhraseBanks().get("primary");
+    if (primaryPhraseBank == null) {
+      throw new IllegalStateException("No \"primary\" phrase bank found.");
+    }
+  }
+
+  @Benchmark
+  public String generatePhrase() {
+    return primaryPhraseBank.generatePhrase();
+  }
+
+  @Benchmark
+  public StringBuilder generatePhraseIntoBuffer() {
+    return primaryPhraseBank.generatePhrase(buffer, random);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public String generatePhraseConcurrently() {
+    return primaryPhraseBank.generatePhrase();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public StringBuilder generatePhraseIntoBufferConcurrently() {
+    return primaryPhraseBank.generatePhrase(buffer, random);
+  }
+
+}
@@ -0,0 +1,45 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.ExamplePhrasePack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the example phrase pack from its text files. Point phrasePackDirectory at a bigger pack to see how parsing
+ * scales with the number of lines and bank files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhrasePackParserBenchmark {
+
+  private Path phrasePackPath;
+  private PhrasePackParser phrasePackParser;
+
+  @Setup
+  public void setUp() {
+    phrasePackPath = ExamplePhrasePack.phrasePackPath();
+    phrasePackParser = new PhrasePackParser();
+  }
+
+  @Benchmark
+  public PhrasePack parse() throws IOException {
+    return phrasePackParser.parse(phrasePackPath);
+  }
+
+}
@@ -0,0 +1,71 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.ExamplePhrasePack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.labbookpages.WavFileException;
+
+/**
+ * End to end ROM generation for the example phrase pack: parsing, encoding every word and assembling the ROM.
+ *
+ * Note that the allocation rate only covers the benchmark thread, the words are encoded on the common pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhrasePackRomGeneratorBenchmark {
+
+  @Param({ "generatedaudio" })
+  public String wordBankDirectory;
+
+  private Path phrasePackPath;
+  private Path wordBankPath;
+  private PhrasePackRomGenerator phrasePackRomGenerator;
+  private PrintStream systemOut;
+
+  @Setup
+  public void setUp() {
+    phrasePackPath = ExamplePhrasePack.phrasePackPath();
+    wordBankPath = phrasePackPath.resolve(wordBankDirectory);
+    phrasePackRomGenerator = new PhrasePackRomGenerator();
+
+    // the generator reports the ROM size on every run, which would drown out the benchmark output
+    systemOut = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+    }));
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.setOut(systemOut);
+  }
+
+  @Benchmark
+  public byte[] generate() throws IOException, WavFileException {
+    return phrasePackRomGenerator.generate(wordBankPath, phrasePackPath);
+  }
+
+}
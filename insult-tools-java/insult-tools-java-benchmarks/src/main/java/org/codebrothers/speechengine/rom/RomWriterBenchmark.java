@@ -0,0 +1,75 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing a 64k ROM image in each format, a word sized piece at a time, to a channel that throws the output away.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomWriterBenchmark {
+
+  private static final int ROM_SIZE = 65536;
+  private static final int WORD_SIZE = 100;
+
+  @Param({ "BINARY", "INTEL_HEX", "C_HEADER" })
+  public RomFormat format;
+
+  private byte[] romData;
+  private WritableByteChannel nullChannel;
+
+  @Setup
+  public void setUp() {
+    romData = new byte[ROM_SIZE];
+    new Random(42).nextBytes(romData);
+
+    nullChannel = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) {
+        int count = src.remaining();
+        src.position(src.limit());
+        return count;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    try (RomWriter romWriter = format.writer(nullChannel, "rom")) {
+      for (int offset = 0; offset < romData.length; offset += WORD_SIZE) {
+        romWriter.comment("word");
+        romWriter.write(romData, offset, Math.min(WORD_SIZE, romData.length - offset));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.ExamplePhrasePack;
+import org.codebrothers.speechengine.wordbank.WordBank;
+import org.codebrothers.speechengine.wordbank.WordBankProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.labbookpages.WavFileException;
+
+/**
+ * Rendering a phrase from the example word bank to PCM with each synthesizer: how long until the first frame is ready,
+ * and how long the whole phrase takes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhrasePcmRendererBenchmark {
+
+  private static final String PHRASE = "i want to brutally swiftly coagulate your backside _pause_ you moron";
+
+  @Param({ "TALKIE", "TMS5220" })
+  public SynthesizerModel synthesizerModel;
+
+  private PhrasePcmRenderer phrasePcmRenderer;
+  private final short[] samples = new short[LpcSynthesizer.FRAME_SAMPLES];
+
+  @Setup
+  public void setUp() throws IOException, WavFileException {
+    WordBank wordBank = new WordBankProcessor().processParallel(ExamplePhrasePack.wordBankPath());
+    phrasePcmRenderer = new PhrasePcmRenderer(wordBank, synthesizerModel);
+  }
+
+  @Benchmark
+  public short firstFrame() {
+    phrasePcmRenderer.open(PHRASE).read(samples, 0, samples.length);
+    return samples[0];
+  }
+
+  @Benchmark
+  public int wholePhrase() {
+    PhrasePcmRenderer.PcmStream pcmStream = phrasePcmRenderer.open(PHRASE);
+    int total = 0;
+    int count;
+    while ((count = pcmStream.read(samples, 0, samples.length)) > 0) {
+      total += count;
+    }
+    return total;
+  }
+
+}
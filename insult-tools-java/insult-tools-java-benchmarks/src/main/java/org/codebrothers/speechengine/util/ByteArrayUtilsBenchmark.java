@@ -0,0 +1,76 @@
+package org.codebrothers.speechengine.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hex dumping a ROM image with a comment every 100 bytes or so, as the ROM generator prints it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteArrayUtilsBenchmark {
+
+  @Param({ "65536", "524288" })
+  public int romSize;
+
+  private byte[] romData;
+  private Map<Integer, Object> comments;
+  private Writer nullWriter;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    romData = new byte[romSize];
+    random.nextBytes(romData);
+
+    comments = new HashMap<>();
+    for (int offset = 0; offset < romSize; offset += 50 + random.nextInt(100)) {
+      comments.put(offset, "Word [" + offset + "]");
+    }
+
+    nullWriter = new Writer() {
+      @Override
+      public void write(char[] cbuf, int off, int len) {
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  @Benchmark
+  public String toHexString() {
+    return ByteArrayUtils.toHexString(romData, 20, comments);
+  }
+
+  @Benchmark
+  public void appendHex() throws IOException {
+    ByteArrayUtils.appendHex(nullWriter, romData, 20, comments);
+  }
+
+}
@@ -0,0 +1,95 @@
+package uk.co.labbookpages;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.SpeechSignals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import v9t9.engine.speech.encode.LPCSpeechAnalyzer;
+
+/**
+ * Reading a one second, 16-bit mono recording a frame at a time, through WavFile and through the memory mapped
+ * reader the analyzer uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavFileBenchmark {
+
+  @Param({ "8000", "44100" })
+  public int hertz;
+
+  private File wavFile;
+  private double[][] buffer;
+  private float[] window;
+
+  @Setup
+  public void setUp() throws IOException, WavFileException {
+    float[] content = SpeechSignals.voiced(hertz, hertz);
+    double[][] samples = new double[1][content.length];
+    for (int i = 0; i < content.length; i++) {
+      samples[0][i] = content[i];
+    }
+
+    wavFile = File.createTempFile("benchmark", ".wav");
+    WavFile wf = WavFile.newWavFile(wavFile, 1, content.length, 16, hertz);
+    try {
+      wf.writeFrames(samples, content.length);
+    } finally {
+      wf.close();
+    }
+
+    buffer = new double[1][hertz / LPCSpeechAnalyzer.FRAMES_PER_SECOND];
+    window = new float[buffer[0].length];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(wavFile.toPath());
+  }
+
+  @Benchmark
+  public double readFrames() throws IOException, WavFileException {
+    double sum = 0.0;
+    WavFile wf = WavFile.openWavFile(wavFile);
+    try {
+      int len;
+      while ((len = wf.readFrames(buffer, buffer[0].length)) > 0) {
+        sum += buffer[0][len - 1];
+      }
+    } finally {
+      wf.close();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double readFramesMapped() throws IOException, WavFileException {
+    double sum = 0.0;
+    try (MappedWavFile wf = MappedWavFile.openWavFile(wavFile.toPath())) {
+      int len;
+      while ((len = wf.readFrames(window, window.length, MappedWavFile.DOWNMIX)) > 0) {
+        sum += window[len - 1];
+      }
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,68 @@
+package v9t9.engine.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ejs.base.utils.BitOutputStream;
+import ejs.base.utils.BitWriter;
+
+/**
+ * Serialization of a single voiced frame: to a fresh byte array, into a reused bit stream and packed whole into a
+ * reused bit writer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LPCParametersBenchmark {
+
+  private LPCParameters parameters;
+  private BitOutputStream bitOutputStream;
+  private BitWriter bitWriter;
+
+  @Setup
+  public void setUp() {
+    parameters = new LPCParameters();
+    parameters.energyParam = 9;
+    parameters.pitchParam = 30;
+    for (int i = 0; i < parameters.kParam.length; i++) {
+      parameters.kParam[i] = i + 1;
+    }
+    bitOutputStream = new BitOutputStream(new ByteArrayOutputStream(8));
+    bitWriter = new BitWriter(8);
+  }
+
+  @Benchmark
+  public byte[] toBytes() throws IOException {
+    return parameters.toBytes();
+  }
+
+  @Benchmark
+  public BitOutputStream toBitOutputStream() throws IOException {
+    bitOutputStream.reset();
+    parameters.toBytes(bitOutputStream);
+    return bitOutputStream;
+  }
+
+  @Benchmark
+  public BitWriter writeFrame() {
+    bitWriter.reset();
+    parameters.writeFrame(bitWriter);
+    return bitWriter;
+  }
+
+}
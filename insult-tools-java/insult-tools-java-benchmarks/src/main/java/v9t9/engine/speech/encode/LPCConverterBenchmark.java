@@ -0,0 +1,59 @@
+package v9t9.engine.speech.encode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.SpeechSignals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import v9t9.common.speech.ILPCParameters;
+import v9t9.engine.speech.LPCParameters;
+
+/**
+ * Quantization of one analyzed voiced frame into TMS5220 parameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LPCConverterBenchmark {
+
+  private LPCConverter converter;
+  private LPCAnalysisFrame analysisFrame;
+  private LPCParameters parameters;
+
+  @Setup
+  public void setUp() {
+    LPCEncoderParams params = SpeechSignals.encoderParams(LPCSpeechAnalyzer.PLAYBACK_HZ);
+    OpenLPCEngine engine = new OpenLPCEngine(params);
+    float[] content = SpeechSignals.voiced(params.getHertz(), params.getFrameSize());
+    new LowPassLPCFilter(params, new SimpleLPCFilter(params)).filter(content, 0, content.length, content,
+            engine.getY());
+    analysisFrame = engine.analyze(content, 0, content.length);
+
+    converter = new LPCConverter();
+    parameters = new LPCParameters();
+  }
+
+  @Benchmark
+  public LPCParameters apply() {
+    converter.apply(analysisFrame, parameters);
+    return parameters;
+  }
+
+  @Benchmark
+  public ILPCParameters applyNewParameters() {
+    return converter.apply(analysisFrame);
+  }
+
+}
@@ -0,0 +1,73 @@
+package v9t9.engine.speech.encode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.SpeechSignals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Analysis of a single 25 ms frame, the unit of work the analyzer repeats for every frame of every word.
+ *
+ * Lives in the encoder's package as the analysis frame is package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LPCEngineBenchmark {
+
+  @Param({ "OpenLPCEngine", "RtLPCEngine" })
+  public String engine;
+
+  @Param({ "8000", "44100" })
+  public int hertz;
+
+  private ILPCEngine lpcEngine;
+  private float[] content;
+  private LPCAnalysisFrame analysisFrame;
+
+  @Setup
+  public void setUp() {
+    LPCEncoderParams params = SpeechSignals.encoderParams(hertz);
+    switch (engine) {
+      case "OpenLPCEngine":
+        lpcEngine = new OpenLPCEngine(params);
+        break;
+      case "RtLPCEngine":
+        lpcEngine = new RtLPCEngine(params);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown engine " + engine);
+    }
+
+    // filter the frame as the analyzer would, which also primes the engine's pitch analysis buffer
+    content = SpeechSignals.voiced(hertz, params.getFrameSize());
+    new LowPassLPCFilter(params, new SimpleLPCFilter(params)).filter(content, 0, content.length, content,
+            lpcEngine.getY());
+    analysisFrame = new LPCAnalysisFrame(params.getOrder());
+  }
+
+  @Benchmark
+  public LPCAnalysisFrame analyze() {
+    lpcEngine.analyze(content, 0, content.length, analysisFrame);
+    return analysisFrame;
+  }
+
+  @Benchmark
+  public LPCAnalysisFrame analyzeNewFrame() {
+    return lpcEngine.analyze(content, 0, content.length);
+  }
+
+}
@@ -0,0 +1,68 @@
+package v9t9.engine.speech.encode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.benchmark.SpeechSignals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pre-filtering of a single 25 ms frame. Each filter is measured on its own, so the low pass filter is not chained.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LPCFilterBenchmark {
+
+  @Param({ "SimpleLPCFilter", "LowPassLPCFilter", "OpenLPCFilter" })
+  public String filter;
+
+  @Param({ "8000", "44100" })
+  public int hertz;
+
+  private ILPCFilter lpcFilter;
+  private float[] content;
+  private float[] out;
+  private float[] y;
+
+  @Setup
+  public void setUp() {
+    LPCEncoderParams params = SpeechSignals.encoderParams(hertz);
+    switch (filter) {
+      case "SimpleLPCFilter":
+        lpcFilter = new SimpleLPCFilter(params);
+        break;
+      case "LowPassLPCFilter":
+        lpcFilter = new LowPassLPCFilter(params, null);
+        break;
+      case "OpenLPCFilter":
+        lpcFilter = new OpenLPCFilter(params);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown filter " + filter);
+    }
+
+    content = SpeechSignals.voiced(hertz, params.getFrameSize());
+    out = new float[content.length];
+    y = new float[content.length];
+  }
+
+  @Benchmark
+  public float[] filter() {
+    lpcFilter.filter(content, 0, content.length, out, y);
+    return out;
+  }
+
+}
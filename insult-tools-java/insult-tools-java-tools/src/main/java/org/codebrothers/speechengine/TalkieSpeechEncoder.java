@@ -4,7 +4,10 @@ package org.codebrothers.speechengine;
 import static org.codebrothers.speechengine.util.ByteArrayUtils.toHexString;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -13,13 +16,29 @@ import javax.sound.sampled.LineUnavailableException;
 import uk.co.labbookpages.WavFileException;
 import v9t9.common.speech.ILPCParameters;
 import v9t9.engine.speech.encode.LPCSpeechAnalyzer;
-import ejs.base.utils.BitOutputStream;
+import ejs.base.utils.BitWriter;
 
 /**
  * Experiment in getting the correct data format for Talkie.
  */
 public class TalkieSpeechEncoder {
 
+  /*
+   * Packed bytes are passed on once this many have built up.
+   */
+  private static final int DRAIN_BYTES = 4096;
+
+  /*
+   * Bit reversed value of every byte.
+   */
+  private static final byte[] REVERSED_BYTES = new byte[256];
+
+  static {
+    for (int i = 0; i < REVERSED_BYTES.length; i++) {
+      REVERSED_BYTES[i] = (byte) (Integer.reverse(i) >>> 24);
+    }
+  }
+
   public static void main(String[] args) throws IOException, LineUnavailableException, WavFileException {
     if (args.length != 1) {
       System.out.println("Usage: TalkieSpeechEncoder [path_to_wav_file]");
@@ -29,16 +48,47 @@ public class TalkieSpeechEncoder {
     // encode the file to a byte array
     LPCSpeechAnalyzer lpcSpeechAnalyzer = new LPCSpeechAnalyzer();
     TalkieSpeechEncoder talkieSpeechEncoder = new TalkieSpeechEncoder();
-    byte[] byteArray = talkieSpeechEncoder.encode(lpcSpeechAnalyzer.analyze(Paths.get(args[0])));
+    byte[] byteArray = talkieSpeechEncoder.encode(Paths.get(args[0]), lpcSpeechAnalyzer);
 
     // output in hex format
     System.out.println(toHexString(byteArray));
   }
 
-  public byte[] encode(List<ILPCParameters> analyzedFrames) throws IOException {
+  public byte[] encode(List<ILPCParameters> analyzedFrames) {
+    BitWriter bitWriter = new BitWriter();
+    for (ILPCParameters frameParameters : analyzedFrames) {
+      outputFrame(frameParameters, bitWriter);
+    }
+    bitWriter.writeBits(15, 4);
+    return reverseBytes(bitWriter.toByteArray());
+  }
+
+  public byte[] encode(Path wavFile, LPCSpeechAnalyzer lpcSpeechAnalyzer) throws IOException, WavFileException {
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    outputFrames(analyzedFrames, byteArrayOutputStream);
-    return reverseBytes(byteArrayOutputStream.toByteArray());
+    encode(wavFile, lpcSpeechAnalyzer, byteArrayOutputStream);
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  /**
+   * Streams a recording straight into the Talkie format. Each frame is analyzed, quantized and packed into the bit
+   * stream as it is produced, so memory use doesn't grow with the length of the recording.
+   *
+   * The output stream is left open.
+   */
+  public void encode(Path wavFile, LPCSpeechAnalyzer lpcSpeechAnalyzer, OutputStream outputStream)
+          throws IOException, WavFileException {
+    ReversingOutputStream reversingOutputStream = new ReversingOutputStream(outputStream);
+    BitWriter bitWriter = new BitWriter(DRAIN_BYTES + 8);
+    lpcSpeechAnalyzer.analyze(wavFile, frameParameters -> {
+      outputFrame(frameParameters, bitWriter);
+      if (bitWriter.byteLength() >= DRAIN_BYTES) {
+        bitWriter.drainTo(reversingOutputStream);
+      }
+    });
+    bitWriter.writeBits(15, 4);
+    bitWriter.padToByte();
+    bitWriter.drainTo(reversingOutputStream);
+    reversingOutputStream.flush();
   }
 
   /**
@@ -56,23 +106,52 @@ public class TalkieSpeechEncoder {
     return byteArray;
   }
 
-  /**
-   * Yikes! Let's how about a lookup table?
+  private static byte reverseByte(byte value) {
+    return REVERSED_BYTES[value & 0xFF];
+  }
+
+  /*
+   * Talkie stops at the first frame with an energy of 15, so those are only written at the end.
    */
-  private byte reverseByte(byte value) {
-    return (byte) (Integer.reverse(value) >>> 24);
+  private static void outputFrame(ILPCParameters frameParameters, BitWriter bitWriter) {
+    if (!frameParameters.isLast()) {
+      frameParameters.writeFrame(bitWriter);
+    }
   }
 
-  private static void outputFrames(List<ILPCParameters> analyzedFrames, ByteArrayOutputStream byteArrayOutputStream)
-          throws IOException {
-    try (BitOutputStream bitOutputStream = new BitOutputStream(byteArrayOutputStream)) {
-      for (ILPCParameters frameParameters : analyzedFrames) {
-        if (!frameParameters.isLast()) {
-          frameParameters.toBytes(bitOutputStream);
-        }
+  /*
+   * Reverses the bits of each byte on its way through, see reverseBytes. Closing flushes but leaves the underlying
+   * stream open.
+   */
+  private static class ReversingOutputStream extends FilterOutputStream {
+
+    private byte[] reversed = new byte[0];
+
+    public ReversingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(REVERSED_BYTES[b & 0xFF]);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (reversed.length < len) {
+        reversed = new byte[len];
+      }
+      for (int i = 0; i < len; i++) {
+        reversed[i] = REVERSED_BYTES[b[off + i] & 0xFF];
       }
-      bitOutputStream.writeBits(15, 4);
+      out.write(reversed, 0, len);
     }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+
   }
 
 }
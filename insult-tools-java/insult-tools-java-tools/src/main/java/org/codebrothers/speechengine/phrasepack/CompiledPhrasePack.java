@@ -0,0 +1,244 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.codebrothers.speechengine.phrasepack.token.Phrase;
+import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
+import org.codebrothers.speechengine.phrasepack.token.PhraseToken;
+import org.codebrothers.speechengine.phrasepack.token.Word;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A phrase pack compiled down to a few flat int arrays, for generating phrases in bulk.
+ *
+ * Words and phrase banks are numbered, in the order the phrase pack holds them. All the phrases of all the banks are
+ * laid end to end in one token table:
+ *
+ * <ul>
+ * <li>Bank b's phrases are phrase numbers bankPhrases[b] up to bankPhrases[b + 1].</li>
+ * <li>Phrase p's tokens are tokens[phraseTokens[p]] up to tokens[phraseTokens[p + 1]].</li>
+ * <li>A token is a word id, or the complement (~) of a bank id, so it's a bank when negative.</li>
+ * </ul>
+ *
+ * Phrases are generated by a {@link Generator}, which walks the tables with a stack of its own rather than recursing,
+ * and puts out word ids or text. Given an identically seeded random, it generates exactly the phrases
+ * {@link PhraseBank#generatePhrase(SplittableRandom)} would.
+ *
+ * The compiled pack never changes, so any number of threads can generate from it at once, each with its own generator.
+ */
+public final class CompiledPhrasePack {
+
+  private final String[] words;
+  private final String[] bankIds;
+  private final Map<String, Integer> bankNumbers;
+
+  private final int[] bankPhrases;
+  private final int[] phraseTokens;
+  private final int[] tokens;
+
+  private CompiledPhrasePack(String[] words, String[] bankIds, int[] bankPhrases, int[] phraseTokens, int[] tokens) {
+    this.words = words;
+    this.bankIds = bankIds;
+    this.bankPhrases = bankPhrases;
+    this.phraseTokens = phraseTokens;
+    this.tokens = tokens;
+
+    bankNumbers = new HashMap<>();
+    for (int i = 0; i < bankIds.length; i++) {
+      bankNumbers.put(bankIds[i], i);
+    }
+  }
+
+  public static CompiledPhrasePack compile(PhrasePack phrasePack) {
+    Map<Word, Integer> wordNumbers = new HashMap<>();
+    String[] words = new String[phrasePack.getWords().size()];
+    for (Word word : phrasePack.getWords().values()) {
+      words[wordNumbers.size()] = word.getWord();
+      wordNumbers.put(word, wordNumbers.size());
+    }
+
+    Map<PhraseBank, Integer> bankNumbers = new HashMap<>();
+    String[] bankIds = new String[phrasePack.getPhraseBanks().size()];
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      bankIds[bankNumbers.size()] = phraseBank.getId();
+      bankNumbers.put(phraseBank, bankNumbers.size());
+    }
+
+    int[] bankPhrases = new int[bankIds.length + 1];
+    List<Phrase> phrases = new ArrayList<>();
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      phrases.addAll(phraseBank.getPhrases());
+      bankPhrases[bankNumbers.get(phraseBank) + 1] = phrases.size();
+    }
+
+    int[] phraseTokens = new int[phrases.size() + 1];
+    int[] tokens = new int[phrases.stream().mapToInt(phrase -> phrase.getTokens().size()).sum()];
+    int tokenCount = 0;
+    for (int p = 0; p < phrases.size(); p++) {
+      for (PhraseToken token : phrases.get(p).getTokens()) {
+        tokens[tokenCount++] = token instanceof Word ? wordNumbers.get(token) : ~bankNumbers.get(token);
+      }
+      phraseTokens[p + 1] = tokenCount;
+    }
+
+    return new CompiledPhrasePack(words, bankIds, bankPhrases, phraseTokens, tokens);
+  }
+
+  public int getWordCount() {
+    return words.length;
+  }
+
+  public String getWord(int wordId) {
+    return words[wordId];
+  }
+
+  public int getBankCount() {
+    return bankIds.length;
+  }
+
+  public String getBankId(int bank) {
+    return bankIds[bank];
+  }
+
+  /**
+   * The number of the phrase bank with the given id.
+   */
+  public int getBank(String bankId) {
+    Integer bank = bankNumbers.get(bankId);
+    Preconditions.checkArgument(bank != null, MessageFormat.format("No \"{0}\" phrase bank found.", bankId));
+    return bank;
+  }
+
+  public int getPhraseCount() {
+    return phraseTokens.length - 1;
+  }
+
+  /**
+   * Bank b's phrases are phrase numbers [b] up to [b + 1].
+   */
+  int[] getBankPhrases() {
+    return bankPhrases;
+  }
+
+  /**
+   * Phrase p's tokens are those in the token table from [p] up to [p + 1].
+   */
+  int[] getPhraseTokens() {
+    return phraseTokens;
+  }
+
+  /**
+   * The token table, a word id, or the complement of a bank number when negative.
+   */
+  int[] getTokens() {
+    return tokens;
+  }
+
+  public Generator newGenerator() {
+    return new Generator();
+  }
+
+  /**
+   * Generates phrases from the compiled pack, reusing the same few arrays for every phrase. Not thread safe, each
+   * thread needs its own.
+   */
+  public final class Generator {
+
+    // a phrase part way through being generated, for each bank entered but not yet finished
+    private int[] tokenPositions = new int[16];
+    private int[] tokenEnds = new int[16];
+
+    private int[] wordIds = new int[32];
+    private int wordCount;
+
+    private Generator() {
+    }
+
+    /**
+     * Generates a phrase from the given bank, returns how many words it has. They're in {@link #getWordIds()}, until
+     * the next phrase is generated.
+     */
+    public int generate(int bank, SplittableRandom random) {
+      wordCount = 0;
+      int depth = 0;
+      int phrase = pickPhrase(bank, random);
+      tokenPositions[0] = phraseTokens[phrase];
+      tokenEnds[0] = phraseTokens[phrase + 1];
+      depth++;
+
+      while (depth > 0) {
+        int top = depth - 1;
+        if (tokenPositions[top] == tokenEnds[top]) {
+          depth--;
+          continue;
+        }
+        int token = tokens[tokenPositions[top]++];
+        if (token >= 0) {
+          addWord(token);
+          continue;
+        }
+
+        // a bank as the phrase's last token replaces the phrase on the stack, so right recursion doesn't grow it
+        if (tokenPositions[top] == tokenEnds[top]) {
+          depth--;
+        }
+        phrase = pickPhrase(~token, random);
+        if (depth == tokenPositions.length) {
+          tokenPositions = Arrays.copyOf(tokenPositions, depth * 2);
+          tokenEnds = Arrays.copyOf(tokenEnds, depth * 2);
+        }
+        tokenPositions[depth] = phraseTokens[phrase];
+        tokenEnds[depth] = phraseTokens[phrase + 1];
+        depth++;
+      }
+      return wordCount;
+    }
+
+    /**
+     * Generates a phrase from the given bank into the buffer, replacing whatever was in it, and returns the buffer.
+     */
+    public StringBuilder generate(int bank, SplittableRandom random, StringBuilder buffer) {
+      generate(bank, random);
+      buffer.setLength(0);
+      for (int i = 0; i < wordCount; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(words[wordIds[i]]);
+      }
+      return buffer;
+    }
+
+    /**
+     * The word ids of the last phrase generated, only the first {@link #getWordCount()} of them. The array is reused.
+     */
+    public int[] getWordIds() {
+      return wordIds;
+    }
+
+    public int getWordCount() {
+      return wordCount;
+    }
+
+    private int pickPhrase(int bank, SplittableRandom random) {
+      int first = bankPhrases[bank];
+      return first + random.nextInt(bankPhrases[bank + 1] - first);
+    }
+
+    private void addWord(int wordId) {
+      if (wordCount == wordIds.length) {
+        wordIds = Arrays.copyOf(wordIds, wordCount * 2);
+      }
+      wordIds[wordCount++] = wordId;
+    }
+
+  }
+
+}
@@ -0,0 +1,38 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Takes the phrase pack directory as an argument and prints how many phrases each bank can make, then 10 phrases picked
+ * evenly from all of the primary bank's.
+ *
+ * Banks that lead back to themselves make endless phrases, give a maximum depth to count them to.
+ */
+public class CountPhrases {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: CountPhrases [path_to_phrase_pack] [optional_max_depth]");
+      System.exit(1);
+    }
+    CompiledPhrasePack compiledPhrasePack =
+            CompiledPhrasePack.compile(new PhrasePackParser().parse(Paths.get(args[0])));
+    PhraseCounts phraseCounts = args.length > 1
+            ? PhraseCounts.count(compiledPhrasePack, Integer.parseInt(args[1]))
+            : PhraseCounts.count(compiledPhrasePack);
+
+    System.out.println("Phrases with banks nested up to " + phraseCounts.getMaxDepth() + " deep:");
+    for (int bank = 0; bank < compiledPhrasePack.getBankCount(); bank++) {
+      System.out.println("  " + compiledPhrasePack.getBankId(bank) + ": " + phraseCounts.getCount(bank));
+    }
+
+    int primaryBank = compiledPhrasePack.getBank("primary");
+    SplittableRandom random = new SplittableRandom();
+    for (int i = 0; i < 10; i++) {
+      System.out.println(phraseCounts.sample(primaryBank, random));
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.util.ByteArrayUtils;
+import org.codebrothers.speechengine.util.FilenameUtils;
+import org.codebrothers.speechengine.util.PathPreconditions;
+import org.codebrothers.speechengine.wordbank.EncodedWordCache;
+import org.codebrothers.speechengine.wordbank.WordBank;
+import org.codebrothers.speechengine.wordbank.WordBankProcessor;
+
+import uk.co.labbookpages.WavFileException;
+
+
+/**
+ * Rebuilds a phrase pack ROM, re-encoding only the WAV files that have changed since the last build.
+ *
+ * Only the encoding is incremental. Each build works like this:
+ *
+ * <ul>
+ * <li>Phrase banks: if any phrase bank file was added, removed or modified, the whole pack is parsed again. Otherwise
+ * the parsed pack from the last build is kept.</li>
+ * <li>Word bank: only the WAV files that were added or modified are re-encoded. Words whose WAV file was removed are
+ * dropped.</li>
+ * <li>Layout: if anything changed, the whole ROM is laid out and output again. Nothing from the last layout is kept,
+ * and no section is laid out on its own. A change to any word or phrase moves the offsets of everything after it,
+ * and the pointers to them are spread across both sections.</li>
+ * </ul>
+ *
+ * Files are compared by modification time and size, so touching a file counts as a change. Encoding dominates the
+ * build time, so this saves most of the work. The result is always the same as a full build with
+ * {@link PhrasePackRomGenerator}.
+ *
+ * There is also a watch mode, which rebuilds the ROM as soon as a file in either directory changes.
+ */
+public class IncrementalPhrasePackRomGenerator {
+
+  /*
+   * Editors often save a file in several steps, wait this long for things to settle before rebuilding.
+   */
+  private static final long SETTLE_MILLIS = 20;
+
+  /**
+   * Hears about each ROM built in watch mode.
+   */
+  @FunctionalInterface
+  public interface BuildListener {
+
+    void romBuilt(byte[] romData, Map<Object, Integer> pointers, long buildMillis);
+
+    /**
+     * A failed build doesn't stop the watch, the ROM is rebuilt on the next change.
+     */
+    default void buildFailed(Exception e) {
+      System.err.println("ROM build failed: " + e.getMessage());
+    }
+
+  }
+
+  private final Path wordBankPath;
+  private final Path phrasePackPath;
+  private final WordBankProcessor wordBankProcessor;
+  private final PhrasePackRomGenerator phrasePackRomGenerator;
+
+  // phrase bank section, the parsed pack and the files it was parsed from
+  private Map<Path, FileStamp> phraseBankStamps = Collections.emptyMap();
+  private PhrasePack phrasePack;
+
+  // word bank section, the encoded words and the WAV files they were encoded from
+  private final Map<Path, FileStamp> wavStamps = new HashMap<>();
+  private final WordBank wordBank = new WordBank();
+
+  // the last ROM built, null until the first build and after any change to the inputs, which lays it out in full
+  private byte[] romData;
+  private Map<Object, Integer> romPointers;
+
+  public IncrementalPhrasePackRomGenerator(Path wordBankPath, Path phrasePackPath) {
+    this(wordBankPath, phrasePackPath, new WordBankProcessor());
+  }
+
+  public IncrementalPhrasePackRomGenerator(Path wordBankPath, Path phrasePackPath,
+          WordBankProcessor wordBankProcessor) {
+    this(wordBankPath, phrasePackPath, wordBankProcessor, RomAddressing.DEFAULT);
+  }
+
+  public IncrementalPhrasePackRomGenerator(Path wordBankPath, Path phrasePackPath,
+          WordBankProcessor wordBankProcessor, RomAddressing romAddressing) {
+    PathPreconditions.checkReadableDirectory(wordBankPath);
+    PathPreconditions.checkReadableDirectory(phrasePackPath);
+    this.wordBankPath = wordBankPath;
+    this.phrasePackPath = phrasePackPath;
+    this.wordBankProcessor = wordBankProcessor;
+    this.phrasePackRomGenerator = new PhrasePackRomGenerator(wordBankProcessor, romAddressing);
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 2 || args.length > 3) {
+      System.out.println("Usage: IncrementalPhrasePackRomGenerator [word_bank_directory] [phrase_pack_directory] "
+              + "[optional_cache_directory]");
+      System.exit(1);
+    }
+
+    WordBankProcessor wordBankProcessor = args.length > 2
+            ? new WordBankProcessor(new EncodedWordCache(Paths.get(args[2])))
+            : new WordBankProcessor();
+    IncrementalPhrasePackRomGenerator generator =
+            new IncrementalPhrasePackRomGenerator(Paths.get(args[0]), Paths.get(args[1]), wordBankProcessor);
+
+    System.out.println("Watching for changes, interrupt to stop.");
+    Writer out = new OutputStreamWriter(System.out);
+    generator.watch((romData, pointers, buildMillis) -> {
+      System.out.println("============= START ROM DATA =============");
+      try {
+        // streamed rather than built up as one huge string
+        ByteArrayUtils.appendHex(out, romData, 20, PhrasePackRomGenerator.pointerComments(pointers));
+        out.write(System.lineSeparator());
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      System.out.println("============= ROM built in " + buildMillis + " ms =============");
+    });
+  }
+
+  /**
+   * Brings the ROM up to date with the files on disk. After any change the whole ROM is laid out again.
+   */
+  public byte[] build() throws IOException, WavFileException {
+    return build(new HashMap<>());
+  }
+
+  /**
+   * As {@link #build()}, filling in the offset of every phrase bank, phrase and word in the pointers.
+   */
+  public synchronized byte[] build(Map<Object, Integer> pointers) throws IOException, WavFileException {
+    updatePhraseBanks();
+    updateWordBank();
+
+    if (romData == null) {
+      Map<Object, Integer> newPointers = new HashMap<>();
+      romData = phrasePackRomGenerator.generate(phrasePack, wordBank, newPointers);
+      romPointers = newPointers;
+    }
+
+    pointers.putAll(romPointers);
+    return romData.clone();
+  }
+
+  /**
+   * Builds the ROM, then rebuilds it each time a file in the word bank or phrase pack directory changes, passing each
+   * ROM to the listener. Runs until the thread is interrupted.
+   */
+  public void watch(BuildListener listener) throws IOException, InterruptedException {
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      phrasePackPath.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      wordBankPath.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+      rebuild(listener);
+      while (true) {
+        WatchKey key = watchService.take();
+        do {
+          key.pollEvents();
+          if (!key.reset()) {
+            throw new IOException(
+                    MessageFormat.format("Directory \"{0}\" can no longer be watched.", key.watchable()));
+          }
+          key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        rebuild(listener);
+      }
+    }
+  }
+
+  private void rebuild(BuildListener listener) {
+    long start = System.nanoTime();
+    try {
+      Map<Object, Integer> pointers = new HashMap<>();
+      byte[] rom = build(pointers);
+      listener.romBuilt(rom, pointers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (IOException | WavFileException | RuntimeException e) {
+      listener.buildFailed(e);
+    }
+  }
+
+  private void updatePhraseBanks() throws IOException {
+    // stamp before parsing, so a file changing part way through is picked up next time
+    Map<Path, FileStamp> stamps = stamp(PhrasePackParser.phraseBankPaths(phrasePackPath).values());
+    if (phrasePack == null || !stamps.equals(phraseBankStamps)) {
+      phrasePack = new PhrasePackParser().parse(phrasePackPath);
+      phraseBankStamps = stamps;
+      romData = null;
+    }
+  }
+
+  private void updateWordBank() throws IOException, WavFileException {
+    Map<Path, FileStamp> stamps = stamp(WordBankProcessor.wavFiles(wordBankPath));
+
+    // forget words that have gone
+    List<Path> removed = new ArrayList<>(wavStamps.keySet());
+    removed.removeAll(stamps.keySet());
+    for (Path path : removed) {
+      wordBank.remove(FilenameUtils.fileNameWithoutExtension(path));
+      wavStamps.remove(path);
+      romData = null;
+    }
+
+    // encode new and modified words, their stamps are only recorded once they've encoded
+    List<Path> changed = new ArrayList<>();
+    for (Map.Entry<Path, FileStamp> stamp : stamps.entrySet()) {
+      if (!stamp.getValue().equals(wavStamps.get(stamp.getKey()))) {
+        changed.add(stamp.getKey());
+      }
+    }
+    if (!changed.isEmpty()) {
+      wordBank.putAll(wordBankProcessor.process(changed, ForkJoinPool.commonPool()));
+      for (Path path : changed) {
+        wavStamps.put(path, stamps.get(path));
+      }
+      romData = null;
+    }
+  }
+
+  private static Map<Path, FileStamp> stamp(Collection<Path> paths) throws IOException {
+    Map<Path, FileStamp> stamps = new HashMap<>();
+    for (Path path : paths) {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      stamps.put(path, new FileStamp(attributes.lastModifiedTime(), attributes.size()));
+    }
+    return stamps;
+  }
+
+  /*
+   * What a file looked like when it was last read.
+   */
+  private static class FileStamp {
+
+    private final FileTime lastModified;
+    private final long size;
+
+    public FileStamp(FileTime lastModified, long size) {
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FileStamp)) {
+        return false;
+      }
+      FileStamp other = (FileStamp) obj;
+      return lastModified.equals(other.lastModified) && size == other.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return lastModified.hashCode() * 31 + Long.hashCode(size);
+    }
+
+  }
+
+}
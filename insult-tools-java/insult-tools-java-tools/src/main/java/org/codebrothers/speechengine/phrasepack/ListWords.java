@@ -12,16 +12,16 @@ import org.codebrothers.speechengine.phrasepack.token.Word;
 public class ListWords {
 
   public static void main(String[] args) throws IOException {
-    if (args.length != 1) {
-      System.out.println("Usage: SayPhrase [path_to_phrase_pack]");
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: ListWords [path_to_phrase_pack] [optional_snapshot_directory]");
       System.exit(1);
     }
-    PhrasePack phrasePack = parsePhrasePack(Paths.get(args[0]));
+    PhrasePack phrasePack = parsePhrasePack(Paths.get(args[0]), args.length > 1 ? Paths.get(args[1]) : null);
     phrasePack.getWords().values().stream().map(Word::getWord).forEach(System.out::println);
   }
 
-  private static PhrasePack parsePhrasePack(Path phrasePackPath) throws IOException {
-    PhrasePackParser phrasePackParser = new PhrasePackParser();
+  private static PhrasePack parsePhrasePack(Path phrasePackPath, Path snapshotDirectory) throws IOException {
+    PhrasePackParser phrasePackParser = new PhrasePackParser(snapshotDirectory);
     return phrasePackParser.parse(phrasePackPath);
   }
 
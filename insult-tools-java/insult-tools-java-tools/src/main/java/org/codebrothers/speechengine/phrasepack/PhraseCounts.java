@@ -0,0 +1,307 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.math.BigInteger;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Counts every phrase a compiled phrase pack can generate, and numbers them so any one can be had by its index without
+ * generating the others.
+ *
+ * <h2>Counting</h2>
+ *
+ * A phrase expands to the product of the counts of its tokens, a word counting as one, and a bank to the sum of its
+ * phrases' counts. What is counted are expansions, two different expansions giving the same words (e.g. a phrase
+ * repeated in a bank) count twice.
+ *
+ * A bank can lead back to itself, e.g. "{adverb} {action}" in the action bank, and then there's no end to the phrases.
+ * So expansions are only counted down to a maximum depth, the number of banks nested inside one another including the
+ * one generated from. A pack with no such loop has a depth beyond which nothing changes, and is counted exactly.
+ *
+ * The counts for every bank and phrase at every depth are worked out once, bottom up, as BigIntegers.
+ *
+ * <h2>Unranking</h2>
+ *
+ * The expansions of a bank are numbered from zero, through its phrases in order, and within a phrase with the first
+ * token varying slowest. An index is turned into its expansion by peeling off each token's share of it, the same as
+ * reading off the digits of a number in a mixed radix.
+ *
+ * That gives enumeration as a lazy stream over the indices, and uniform sampling over every expansion by picking an
+ * index at random, which {@link org.codebrothers.speechengine.phrasepack.token.PhraseBank#generatePhrase()}
+ * can't do: it favours the expansions of small phrases.
+ */
+public class PhraseCounts {
+
+  private final CompiledPhrasePack compiledPhrasePack;
+  private final int maxDepth;
+
+  // [depth][bank] and [depth][phrase], depth 0 counting nothing
+  private final BigInteger[][] bankCounts;
+  private final BigInteger[][] phraseCounts;
+
+  private PhraseCounts(CompiledPhrasePack compiledPhrasePack, int maxDepth) {
+    this.compiledPhrasePack = compiledPhrasePack;
+    this.maxDepth = maxDepth;
+
+    int[] bankPhrases = compiledPhrasePack.getBankPhrases();
+    int[] phraseTokens = compiledPhrasePack.getPhraseTokens();
+    int[] tokens = compiledPhrasePack.getTokens();
+
+    bankCounts = new BigInteger[maxDepth + 1][compiledPhrasePack.getBankCount()];
+    phraseCounts = new BigInteger[maxDepth + 1][compiledPhrasePack.getPhraseCount()];
+    Arrays.fill(bankCounts[0], BigInteger.ZERO);
+    Arrays.fill(phraseCounts[0], BigInteger.ZERO);
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      for (int phrase = 0; phrase < phraseCounts[depth].length; phrase++) {
+        BigInteger count = BigInteger.ONE;
+        for (int t = phraseTokens[phrase]; t < phraseTokens[phrase + 1] && count.signum() > 0; t++) {
+          if (tokens[t] < 0) {
+            count = count.multiply(bankCounts[depth - 1][~tokens[t]]);
+          }
+        }
+        phraseCounts[depth][phrase] = count;
+      }
+      for (int bank = 0; bank < bankCounts[depth].length; bank++) {
+        BigInteger count = BigInteger.ZERO;
+        for (int phrase = bankPhrases[bank]; phrase < bankPhrases[bank + 1]; phrase++) {
+          count = count.add(phraseCounts[depth][phrase]);
+        }
+        bankCounts[depth][bank] = count;
+      }
+    }
+  }
+
+  /**
+   * Counts every expansion of a phrase pack whose banks never lead back to themselves.
+   *
+   * @throws IllegalStateException if a bank can lead back to itself, count to a maximum depth instead.
+   */
+  public static PhraseCounts count(CompiledPhrasePack compiledPhrasePack) {
+    int depth = maxNesting(compiledPhrasePack);
+    if (depth < 0) {
+      throw new IllegalStateException(
+              "The phrase pack has banks that lead back to themselves, it can only be counted to a maximum depth.");
+    }
+    return new PhraseCounts(compiledPhrasePack, depth);
+  }
+
+  /**
+   * Counts the expansions of a phrase pack with no more than the given number of banks nested inside one another.
+   */
+  public static PhraseCounts count(CompiledPhrasePack compiledPhrasePack, int maxDepth) {
+    Preconditions.checkArgument(maxDepth > 0,
+            MessageFormat.format("The maximum depth must be at least one, not {0}.", maxDepth));
+    return new PhraseCounts(compiledPhrasePack, maxDepth);
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * The number of expansions of the bank.
+   */
+  public BigInteger getCount(int bank) {
+    return bankCounts[maxDepth][bank];
+  }
+
+  /**
+   * The word ids of the expansion of the bank with the given index.
+   */
+  public int[] unrank(int bank, BigInteger index) {
+    Preconditions.checkArgument(index.signum() >= 0 && index.compareTo(getCount(bank)) < 0,
+            MessageFormat.format("Index {0,number,#} is out of range, bank \"{1}\" has {2,number,#} expansions.", index,
+                    compiledPhrasePack.getBankId(bank), getCount(bank)));
+    WordIds wordIds = new WordIds();
+    unrankBank(bank, maxDepth, index, wordIds);
+    return Arrays.copyOf(wordIds.ids, wordIds.count);
+  }
+
+  /**
+   * The expansion of the bank with the given index, as text.
+   */
+  public String unrankText(int bank, BigInteger index) {
+    StringBuilder stringBuilder = new StringBuilder();
+    for (int wordId : unrank(bank, index)) {
+      if (stringBuilder.length() > 0) {
+        stringBuilder.append(' ');
+      }
+      stringBuilder.append(compiledPhrasePack.getWord(wordId));
+    }
+    return stringBuilder.toString();
+  }
+
+  /**
+   * Every expansion of the bank as text, in index order, each one worked out only as the stream gets to it. Where
+   * there are fewer than 2^63 the stream is sized and splits well, so can be run in parallel.
+   */
+  public Stream<String> phrases(int bank) {
+    BigInteger count = getCount(bank);
+    if (count.bitLength() < Long.SIZE) {
+      return LongStream.range(0, count.longValue()).mapToObj(index -> unrankText(bank, BigInteger.valueOf(index)));
+    }
+    Iterator<String> iterator = new Iterator<String>() {
+
+      private BigInteger index = BigInteger.ZERO;
+
+      @Override
+      public boolean hasNext() {
+        return index.compareTo(count) < 0;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        String phrase = unrankText(bank, index);
+        index = index.add(BigInteger.ONE);
+        return phrase;
+      }
+
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+  }
+
+  /**
+   * An index picked uniformly from the bank's expansions.
+   */
+  public BigInteger randomIndex(int bank, SplittableRandom random) {
+    BigInteger count = getCount(bank);
+    Preconditions.checkState(count.signum() > 0,
+            MessageFormat.format("Bank \"{0}\" has no expansions.", compiledPhrasePack.getBankId(bank)));
+    int bits = count.bitLength();
+    byte[] bytes = new byte[(bits + 7) / 8];
+    while (true) {
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) random.nextInt(256);
+      }
+      // clear the bits above the count's top bit, so at least half the draws land below it
+      bytes[0] &= 0xFF >>> (bytes.length * 8 - bits);
+      BigInteger index = new BigInteger(1, bytes);
+      if (index.compareTo(count) < 0) {
+        return index;
+      }
+    }
+  }
+
+  /**
+   * A phrase picked uniformly from the bank's expansions, as text.
+   */
+  public String sample(int bank, SplittableRandom random) {
+    return unrankText(bank, randomIndex(bank, random));
+  }
+
+  private void unrankBank(int bank, int depth, BigInteger index, WordIds wordIds) {
+    int[] bankPhrases = compiledPhrasePack.getBankPhrases();
+    for (int phrase = bankPhrases[bank]; phrase < bankPhrases[bank + 1]; phrase++) {
+      BigInteger count = phraseCounts[depth][phrase];
+      if (index.compareTo(count) < 0) {
+        unrankPhrase(phrase, depth, index, wordIds);
+        return;
+      }
+      index = index.subtract(count);
+    }
+    throw new IllegalStateException("Index ran past the end of the bank.");
+  }
+
+  private void unrankPhrase(int phrase, int depth, BigInteger index, WordIds wordIds) {
+    int[] phraseTokens = compiledPhrasePack.getPhraseTokens();
+    int[] tokens = compiledPhrasePack.getTokens();
+    int first = phraseTokens[phrase];
+    int end = phraseTokens[phrase + 1];
+
+    // the last token varies fastest, so its index is the lowest digit
+    BigInteger[] tokenIndices = new BigInteger[end - first];
+    for (int t = end - 1; t >= first; t--) {
+      if (tokens[t] < 0) {
+        BigInteger[] quotientAndRemainder = index.divideAndRemainder(bankCounts[depth - 1][~tokens[t]]);
+        tokenIndices[t - first] = quotientAndRemainder[1];
+        index = quotientAndRemainder[0];
+      }
+    }
+
+    for (int t = first; t < end; t++) {
+      if (tokens[t] >= 0) {
+        wordIds.add(tokens[t]);
+      } else {
+        unrankBank(~tokens[t], depth - 1, tokenIndices[t - first], wordIds);
+      }
+    }
+  }
+
+  /*
+   * The most banks nested inside one another in any expansion, or -1 if a bank can lead back to itself.
+   */
+  private static int maxNesting(CompiledPhrasePack compiledPhrasePack) {
+    int[] nesting = new int[compiledPhrasePack.getBankCount()];
+    boolean[] visiting = new boolean[nesting.length];
+    int maxNesting = 0;
+    for (int bank = 0; bank < nesting.length; bank++) {
+      int bankNesting = nesting(compiledPhrasePack, bank, nesting, visiting);
+      if (bankNesting < 0) {
+        return -1;
+      }
+      maxNesting = Math.max(maxNesting, bankNesting);
+    }
+    return maxNesting;
+  }
+
+  /*
+   * Depth first through the banks a bank uses, nesting[bank] is zero until worked out.
+   */
+  private static int nesting(CompiledPhrasePack compiledPhrasePack, int bank, int[] nesting, boolean[] visiting) {
+    if (nesting[bank] > 0) {
+      return nesting[bank];
+    }
+    if (visiting[bank]) {
+      return -1;
+    }
+    visiting[bank] = true;
+    int[] bankPhrases = compiledPhrasePack.getBankPhrases();
+    int[] phraseTokens = compiledPhrasePack.getPhraseTokens();
+    int[] tokens = compiledPhrasePack.getTokens();
+    int deepest = 0;
+    for (int t = phraseTokens[bankPhrases[bank]]; t < phraseTokens[bankPhrases[bank + 1]]; t++) {
+      if (tokens[t] < 0) {
+        int tokenNesting = nesting(compiledPhrasePack, ~tokens[t], nesting, visiting);
+        if (tokenNesting < 0) {
+          return -1;
+        }
+        deepest = Math.max(deepest, tokenNesting);
+      }
+    }
+    visiting[bank] = false;
+    nesting[bank] = deepest + 1;
+    return nesting[bank];
+  }
+
+  /*
+   * The word ids of an expansion as they're unranked.
+   */
+  private static class WordIds {
+
+    private int[] ids = new int[32];
+    private int count;
+
+    public void add(int id) {
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+      }
+      ids[count++] = id;
+    }
+
+  }
+
+}
@@ -1,20 +1,22 @@
 package org.codebrothers.speechengine.phrasepack;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.codebrothers.speechengine.phrasepack.token.Phrase;
@@ -24,36 +26,81 @@ import org.codebrothers.speechengine.phrasepack.token.Word;
 import org.codebrothers.speechengine.util.FilenameUtils;
 import org.codebrothers.speechengine.util.PathPreconditions;
 
+/**
+ * Parses a phrase pack directory, one phrase bank file per bank.
+ *
+ * Each line of a bank file is a phrase, its tokens separated by whitespace. A token is a word, [a-z_]+, or a phrase
+ * bank in braces, {[a-z_]+}. Lines are scanned a character at a time, and the bank files are parsed in parallel, but
+ * the pack is always the same as reading the files one after another would give, words in the same order and the same
+ * error for a bad pack.
+ *
+ * Given a snapshot directory, each pack parsed is also saved there in binary and loaded from the snapshot while its
+ * phrase bank files are unchanged, so short lived tools needn't parse the text at all. See
+ * {@link PhrasePackSnapshot}.
+ */
 public class PhrasePackParser {
 
-  private static final Pattern WORD_PATTERN = Pattern.compile("^[a-z_]+$");
-  private static final Pattern PHRASE_PATTERN = Pattern.compile("^\\{([a-z_]+)\\}$");
   private static final String PHRASE_BANK_FILENAME_PATTERN = "^[a-z_]+\\.txt$";
 
+  // optional, when present packs are loaded from and saved to snapshots here
+  private final Path snapshotDirectory;
+
+  public PhrasePackParser() {
+    this(null);
+  }
+
+  /**
+   * The snapshot directory is created when the first snapshot is saved. It can be shared by any number of packs and
+   * tools.
+   */
+  public PhrasePackParser(Path snapshotDirectory) {
+    this.snapshotDirectory = snapshotDirectory;
+  }
+
   public PhrasePack parse(Path phrasePackPath) throws IOException {
     PathPreconditions.checkReadableDirectory(phrasePackPath);
 
     // grab a list of paths to the phrase bank files
     Map<String, Path> paths = phraseBankPaths(phrasePackPath);
+    if (snapshotDirectory == null) {
+      return parse(paths);
+    }
 
+    PhrasePackSnapshot snapshot = new PhrasePackSnapshot(snapshotDirectory, phrasePackPath, paths);
+    PhrasePack phrasePack = snapshot.load();
+    if (phrasePack == null) {
+      phrasePack = parse(paths);
+      snapshot.save(phrasePack);
+    }
+    return phrasePack;
+  }
+
+  private PhrasePack parse(Map<String, Path> paths) throws IOException {
     // phrase banks created eagerly so they can be inserted as phrase tokens by reference
     // also lets us validate phrases contain valid references.
     LinkedHashMap<String, PhraseBank> phraseBanks = createPhraseBanks(paths);
 
-    // gather words separately, so they can be re-used
-    LinkedHashMap<String, Word> words = new LinkedHashMap<>();
-
-    for (Entry<String, Path> pathEntry : paths.entrySet()) {
-      PhraseBank phraseBank = phraseBanks.get(pathEntry.getKey());
+    // the files are parsed in parallel, each filling its own bank, words are created once by whichever gets there first
+    ConcurrentHashMap<String, Word> internedWords = new ConcurrentHashMap<>();
+    List<Entry<String, Path>> pathEntries = new ArrayList<>(paths.entrySet());
+    List<BankWords> bankWords = pathEntries.parallelStream()
+            .map(pathEntry -> parseBank(pathEntry.getValue(), phraseBanks.get(pathEntry.getKey()), phraseBanks,
+                    internedWords))
+            .collect(Collectors.toList());
 
-      try (Stream<String> phraseStream = Files.lines(pathEntry.getValue())) {
-        phraseStream.forEach(string -> parsePhrase(string, phraseBank, phraseBanks, words));
+    // then gathered up in file order, so words come in the same order and the same error is reported as reading the
+    // files one after another
+    LinkedHashMap<String, Word> words = new LinkedHashMap<>();
+    for (int i = 0; i < pathEntries.size(); i++) {
+      bankWords.get(i).rethrowFailure();
+      for (Word word : bankWords.get(i).words) {
+        words.putIfAbsent(word.getWord(), word);
       }
 
       // validate populated
-      if (phraseBank.size() == 0) {
-        throw new IllegalStateException(MessageFormat
-                .format("All phrase banks must be populated. Phrase bank \"{0}\" was empty.", pathEntry.getKey()));
+      if (phraseBanks.get(pathEntries.get(i).getKey()).size() == 0) {
+        throw new IllegalStateException(MessageFormat.format(
+                "All phrase banks must be populated. Phrase bank \"{0}\" was empty.", pathEntries.get(i).getKey()));
       }
     }
 
@@ -61,29 +108,82 @@ public class PhrasePackParser {
     return new PhrasePack(words, phraseBanks);
   }
 
-  private void parsePhrase(String phrase, PhraseBank phraseBank, LinkedHashMap<String, PhraseBank> phraseBanks,
-          LinkedHashMap<String, Word> words) {
-    String[] tokens = phrase.split("\\s+");
-    if (tokens.length == 0) {
+  /*
+   * Parses a bank file into its bank, stopping at the first error rather than throwing it, so it can be reported in
+   * turn.
+   */
+  private static BankWords parseBank(Path path, PhraseBank phraseBank, Map<String, PhraseBank> phraseBanks,
+          ConcurrentHashMap<String, Word> internedWords) {
+    BankWords bankWords = new BankWords(internedWords);
+    try {
+      String text = readBankFile(path);
+      int length = text.length();
+      int position = 0;
+      while (position < length) {
+        // lines end as they do for Files.lines, at \n, \r or \r\n
+        int lineEnd = position;
+        while (lineEnd < length && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+          lineEnd++;
+        }
+        parsePhrase(text, position, lineEnd, phraseBank, phraseBanks, bankWords);
+        position = lineEnd + 1;
+        if (lineEnd + 1 < length && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n') {
+          position++;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      bankWords.failure = e;
+    }
+    return bankWords;
+  }
+
+  /*
+   * Splits the line into tokens the same as String.split("\\s+"): a line of nothing but whitespace has no tokens and is
+   * skipped, whitespace at the start makes an empty first token, which doesn't parse, and whitespace at the end is
+   * ignored.
+   */
+  private static void parsePhrase(String text, int start, int end, PhraseBank phraseBank,
+          Map<String, PhraseBank> phraseBanks, BankWords bankWords) {
+    int position = start;
+    while (position < end && isWhitespace(text.charAt(position))) {
+      position++;
+    }
+    if (position == end && end > start) {
       return;
     }
-    List<PhraseToken> phraseTokens =
-            Arrays.stream(tokens).map(token -> parseToken(token, phraseBanks, words)).collect(Collectors.toList());
+
+    List<PhraseToken> phraseTokens = new ArrayList<>();
+    int tokenStart = start;
+    while (true) {
+      int tokenEnd = tokenStart;
+      while (tokenEnd < end && !isWhitespace(text.charAt(tokenEnd))) {
+        tokenEnd++;
+      }
+      phraseTokens.add(parseToken(text, tokenStart, tokenEnd, phraseBanks, bankWords));
+
+      int next = tokenEnd;
+      while (next < end && isWhitespace(text.charAt(next))) {
+        next++;
+      }
+      if (next == end) {
+        break;
+      }
+      tokenStart = next;
+    }
     phraseBank.addPhrase(new Phrase(phraseTokens));
   }
 
-  private PhraseToken parseToken(String token, LinkedHashMap<String, PhraseBank> phraseBanks,
-          LinkedHashMap<String, Word> words) {
+  private static PhraseToken parseToken(String text, int start, int end, Map<String, PhraseBank> phraseBanks,
+          BankWords bankWords) {
     // deal with words
-    Matcher matcher = WORD_PATTERN.matcher(token);
-    if (matcher.matches()) {
-      return words.computeIfAbsent(token, Word::new);
+    if (isName(text, start, end)) {
+      return bankWords.intern(text, start, end);
     }
 
     // deal with phrases
-    matcher = PHRASE_PATTERN.matcher(token);
-    if (matcher.matches()) {
-      String phraseBankKey = matcher.group(1);
+    if (end - start > 2 && text.charAt(start) == '{' && text.charAt(end - 1) == '}'
+            && isName(text, start + 1, end - 1)) {
+      String phraseBankKey = text.substring(start + 1, end - 1);
       PhraseBank phraseBank = phraseBanks.get(phraseBankKey);
       if (phraseBank == null) {
         throw new TokenParseException(MessageFormat.format("Phrase bank \"{0}\" did not exist.", phraseBankKey));
@@ -92,7 +192,50 @@ public class PhrasePackParser {
     }
 
     // damn
-    throw new TokenParseException(MessageFormat.format("Token \"{0}\" did not parse.", token));
+    throw new TokenParseException(MessageFormat.format("Token \"{0}\" did not parse.", text.substring(start, end)));
+  }
+
+  /*
+   * One or more of [a-z_], the names of words and phrase banks.
+   */
+  private static boolean isName(String text, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if ((c < 'a' || c > 'z') && c != '_') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Whitespace as \\s matches it.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /*
+   * Bank files are nearly always plain ASCII, which needs no decoding. Anything else is decoded as UTF-8, malformed
+   * UTF-8 failing as it would reading the file with Files.lines.
+   */
+  private static String readBankFile(Path path) throws IOException {
+    byte[] bytes = Files.readAllBytes(path);
+    boolean ascii = true;
+    for (int i = 0; i < bytes.length && ascii; i++) {
+      ascii = bytes[i] >= 0;
+    }
+    if (ascii) {
+      return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    try {
+      return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
+    } catch (CharacterCodingException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   private LinkedHashMap<String, PhraseBank> createPhraseBanks(Map<String, Path> paths) {
@@ -101,7 +244,10 @@ public class PhrasePackParser {
     return phraseBanks;
   }
 
-  private Map<String, Path> phraseBankPaths(Path phrasePackPath) throws IOException {
+  /**
+   * The phrase bank files in a phrase pack directory, keyed by phrase bank id.
+   */
+  public static Map<String, Path> phraseBankPaths(Path phrasePackPath) throws IOException {
     try (DirectoryStream<Path> ds = Files.newDirectoryStream(phrasePackPath, PhrasePackParser::isPathValid)) {
       return StreamSupport.stream(ds.spliterator(), false)
               .collect(Collectors.toMap(FilenameUtils::fileNameWithoutExtension, Function.identity()));
@@ -116,4 +262,84 @@ public class PhrasePackParser {
             && FilenameUtils.fileName(path).matches(PHRASE_BANK_FILENAME_PATTERN);
   }
 
+  /*
+   * The words of one bank file in the order they first appear in it, and whatever stopped it parsing.
+   *
+   * Words already seen in the bank are found in an open addressed table by their characters in the line, so the
+   * common case of a word repeated needs no substring. Words new to the bank are interned in the table shared by all
+   * the files.
+   */
+  private static class BankWords {
+
+    private final ConcurrentHashMap<String, Word> internedWords;
+    private final List<Word> words = new ArrayList<>();
+    private Exception failure;
+
+    private Word[] table = new Word[64];
+    private int[] hashes = new int[64];
+
+    public BankWords(ConcurrentHashMap<String, Word> internedWords) {
+      this.internedWords = internedWords;
+    }
+
+    public Word intern(String text, int start, int end) {
+      int length = end - start;
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + text.charAt(i);
+      }
+
+      int mask = table.length - 1;
+      int slot = spread(hash) & mask;
+      for (Word word = table[slot]; word != null; word = table[slot]) {
+        if (hashes[slot] == hash && word.getWord().length() == length
+                && word.getWord().regionMatches(0, text, start, length)) {
+          return word;
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      Word word = internedWords.computeIfAbsent(text.substring(start, end), Word::new);
+      words.add(word);
+      table[slot] = word;
+      hashes[slot] = hash;
+      if (words.size() * 2 > table.length) {
+        grow();
+      }
+      return word;
+    }
+
+    public void rethrowFailure() throws IOException {
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+    }
+
+    private void grow() {
+      Word[] oldTable = table;
+      int[] oldHashes = hashes;
+      table = new Word[oldTable.length * 2];
+      hashes = new int[oldTable.length * 2];
+      int mask = table.length - 1;
+      for (int i = 0; i < oldTable.length; i++) {
+        if (oldTable[i] != null) {
+          int slot = spread(oldHashes[i]) & mask;
+          while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          table[slot] = oldTable[i];
+          hashes[slot] = oldHashes[i];
+        }
+      }
+    }
+
+    private static int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
+
+  }
+
 }
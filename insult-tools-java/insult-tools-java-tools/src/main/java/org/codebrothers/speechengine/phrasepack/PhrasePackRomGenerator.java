@@ -1,35 +1,41 @@
 package org.codebrothers.speechengine.phrasepack;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.codebrothers.speechengine.phrasepack.token.Phrase;
 import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
 import org.codebrothers.speechengine.phrasepack.token.PhraseToken;
 import org.codebrothers.speechengine.phrasepack.token.Word;
+import org.codebrothers.speechengine.rom.ByteArrayRomWriter;
+import org.codebrothers.speechengine.rom.RomFormat;
+import org.codebrothers.speechengine.rom.RomWriter;
 import org.codebrothers.speechengine.util.ByteArrayUtils;
 import org.codebrothers.speechengine.util.PathPreconditions;
+import org.codebrothers.speechengine.wordbank.EncodedWordCache;
 import org.codebrothers.speechengine.wordbank.WordBank;
 import org.codebrothers.speechengine.wordbank.WordBankProcessor;
 
 import uk.co.labbookpages.WavFileException;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Maps;
 
 /**
- * TODO - Optimization : If the C code can allow for it (which it should be able to) where a phrase consists of a single
- * word, it needn't have it's own phrase structure. Instead, it's pointer can point directly to the word. This could
- * trim a few bytes off! NB: Leaving this optimisation until the C side is implemented.
- *
  * Generates a phrase ROM for the AVR chip.
  *
  * <h2>ROM Contents</h2>
@@ -45,10 +51,17 @@ import com.google.common.collect.Maps;
  * This is output in the following format:
  *
  * <pre>
- * [--------------------------- ROM HEADER --------------------------][------- ROM DATA ------]
- * [word bank start pointer (2 bytes)][primary bank pointer (2 bytes)][phrase banks][word bank]
+ * [------------------------------------ ROM HEADER -----------------------------------][------- ROM DATA ------]
+ * [pointer size (1 byte)][bank size (1 byte)][word bank start pointer][primary bank pointer][phrase banks][word bank]
  * </pre>
  *
+ * <h2>Pointers</h2>
+ *
+ * Pointers are 2 bytes by default, limiting the ROM to 64k. They can be made 3 or 4 bytes wide for a bigger ROM, or
+ * the ROM can be split into banks, e.g. one per EEPROM, with each pointer giving a bank and an offset within it (see
+ * {@link RomAddressing}). The first two bytes of the header give the layout: the pointer size in bytes and the bank
+ * size as a power of two, zero when the ROM isn't banked. A ROM too big for its pointers fails to build.
+ *
  * <h2>Word Bank Start Pointer</h2>
  *
  * The word bank start pointer can be used by the processing code to determine whether a pointer in hand is a phrase
@@ -71,34 +84,46 @@ import com.google.common.collect.Maps;
  *
  * <ul>
  * <li>A byte giving a count of the number of phrases in the bank, this can be used to select a random phrase.</li>
- * <li>Two bytes for each phrase, pointing to the memory location of start of the phrase.</li>
+ * <li>A pointer for each phrase, pointing to the memory location of start of the phrase, or straight to the word for a
+ * phrase of a single word.</li>
  * <li>The phrase data.</li>
  * </ul>
  *
  * A phrase bank is output as follows:
  *
  * <pre>
- * [--- PHRASE COUNT ----][------------ PHRASE POINTERS -----------][-- DATA ---]
- * [phrase count (1 byte)][phrase pointers (2 bytes * phrase count)][phrase data]
+ * [--- PHRASE COUNT ----][-------------- PHRASE POINTERS -------------][-- DATA ---]
+ * [phrase count (1 byte)][phrase pointers (pointer size * phrase count)][phrase data]
  * </pre>
  *
  * <h3>Phrase Data</h3>
  *
- * Each phrase in the phrase data is a series of tokens. Each token, of two bytes in length, points to to either a word
- * or another phrase.
+ * Each phrase in the phrase data is a series of tokens. Each token, a pointer, points to to either a word or another
+ * phrase.
  *
  * <ul>
  * <li>A byte giving a count of the number of tokens in the phrase, so we know how many tokens to process.</li>
- * <li>Two bytes for each token, pointing to either a word or a phrase bank.</li>
+ * <li>A pointer for each token, pointing to either a word or a phrase bank.</li>
  * </ul>
  *
  * A phrase is output as follows:
  *
  * <pre>
- * [--- PHRASE COUNT ---][----------- PHRASE POINTERS ----------]
- * [token count (1 byte)][token pointers (2 bytes * token count)]
+ * [--- PHRASE COUNT ---][------------- PHRASE POINTERS ------------]
+ * [token count (1 byte)][token pointers (pointer size * token count)]
  * </pre>
  *
+ * <h3>Single Word Phrases</h3>
+ *
+ * A phrase consisting of a single word doesn't get its own phrase structure. Instead, its pointer in the phrase
+ * directory points directly to the word, which the C side tells apart from a phrase the same way as for a token, by
+ * comparing it against the word bank start pointer.
+ *
+ * <h3>Identical Phrases</h3>
+ *
+ * Phrases made up of exactly the same tokens, in the same bank or not, are output once, and every phrase directory
+ * entry for them points at the one copy. See {@link SharedPhrases}.
+ *
  * <h2>Word Bank:</h2>
  *
  * The word bank is a continuous block of memory containing LPC encoded speech.
@@ -106,36 +131,116 @@ import com.google.common.collect.Maps;
  * Each word is delimited by a frame with an energy of 15, talkie automatically stops when it hits such a frame.
  *
  * These pointers can be passed directly to talkie to play a word.
+ *
+ * <h2>Output</h2>
+ *
+ * The layout is worked out before a byte is output, so the ROM can be streamed front to back to a {@link RomWriter},
+ * e.g. straight to a raw binary, Intel HEX or C header file (see {@link RomFormat}), without ever being assembled in
+ * memory.
  */
 public class PhrasePackRomGenerator {
 
-  /*
-   * Pointers are going to remain at 16-bit until we get above 1024kBits in the ROM.
-   */
-  private static final int POINTER_SIZE = 2;
+  private static final String HEADER_COMMENT =
+          "ROM Header, layout, word bank start pointer and the primary bank pointer.";
 
-  /*
-   * We currently reserve two pointers worth for the word bank start pointer and the primary bank pointer.
-   */
-  private static final int START_OFFSET = 2 * POINTER_SIZE;
+  private final WordBankProcessor wordBankProcessor;
+  private final RomAddressing romAddressing;
+  private final PhrasePackParser phrasePackParser;
+
+  public PhrasePackRomGenerator() {
+    this(new WordBankProcessor());
+  }
+
+  public PhrasePackRomGenerator(WordBankProcessor wordBankProcessor) {
+    this(wordBankProcessor, RomAddressing.DEFAULT);
+  }
+
+  public PhrasePackRomGenerator(WordBankProcessor wordBankProcessor, RomAddressing romAddressing) {
+    this(wordBankProcessor, romAddressing, new PhrasePackParser());
+  }
+
+  public PhrasePackRomGenerator(WordBankProcessor wordBankProcessor, RomAddressing romAddressing,
+          PhrasePackParser phrasePackParser) {
+    this.wordBankProcessor = wordBankProcessor;
+    this.romAddressing = romAddressing;
+    this.phrasePackParser = phrasePackParser;
+  }
 
   public static void main(String[] args) throws IOException, WavFileException {
-    if (args.length != 2) {
-      System.out.println("Usage: PhrasePackRomGenerator [word_bank_directory] [phrase_pack_directory]");
-      System.exit(1);
+    // options come first, the rest of the arguments are as they always were
+    Path outputPath = null;
+    RomAddressing romAddressing = RomAddressing.DEFAULT;
+    int arg = 0;
+    while (args.length - arg > 1 && args[arg].startsWith("-")) {
+      String option = args[arg++];
+      String value = args[arg++];
+      if (option.equals("-o")) {
+        outputPath = Paths.get(value);
+      } else if (option.equals("-p")) {
+        romAddressing = RomAddressing.parse(value);
+      } else {
+        usage();
+      }
+    }
+    args = Arrays.copyOfRange(args, arg, args.length);
+
+    if (args.length < 2 || args.length > 3) {
+      usage();
     }
 
     /*
-     * BiMap is used to track offsets for given entities in the ROM data, useful for generating correct pointers also
-     * used to put nice comments in the output.
+     * Tracks offsets for given entities in the ROM data, useful for generating correct pointers also used to put nice
+     * comments in the output.
      */
-    BiMap<Object, Integer> pointers = HashBiMap.create();
+    Map<Object, Integer> pointers = new HashMap<>();
+
+    // the cache directory also keeps a snapshot of the parsed phrase pack
+    WordBankProcessor wordBankProcessor = args.length > 2
+            ? new WordBankProcessor(new EncodedWordCache(Paths.get(args[2])))
+            : new WordBankProcessor();
+    PhrasePackParser phrasePackParser =
+            args.length > 2 ? new PhrasePackParser(Paths.get(args[2])) : new PhrasePackParser();
+    PhrasePackRomGenerator phrasePackRomGenerator =
+            new PhrasePackRomGenerator(wordBankProcessor, romAddressing, phrasePackParser);
+
+    if (outputPath != null) {
+      phrasePackRomGenerator.write(Paths.get(args[0]), Paths.get(args[1]), pointers, outputPath);
+      System.out.println("ROM written to " + outputPath);
+      return;
+    }
 
-    PhrasePackRomGenerator phrasePackRomGenerator = new PhrasePackRomGenerator();
     byte[] romData = phrasePackRomGenerator.generate(Paths.get(args[0]), Paths.get(args[1]), pointers);
 
     System.out.println("============= START ROM DATA =============");
-    System.out.println(ByteArrayUtils.toHexString(romData, 20, pointers.inverse()));
+    // streamed rather than built up as one huge string
+    Writer out = new OutputStreamWriter(System.out);
+    ByteArrayUtils.appendHex(out, romData, 20, pointerComments(pointers));
+    out.write(System.lineSeparator());
+    out.flush();
+  }
+
+  private static void usage() {
+    System.out.println("Usage: PhrasePackRomGenerator [-o output_file.bin|.hex|.h] [-p pointer_bits[:bank_size]] "
+            + "[word_bank_directory] [phrase_pack_directory] [optional_cache_directory]");
+    System.out.println("  e.g. -p 24 for 24-bit pointers, -p 24:64k for 24-bit pointers into 64k banks");
+    System.exit(1);
+  }
+
+  /**
+   * The pointers the other way round, to comment a hex dump of the ROM. Words sharing their data (see
+   * {@link SharedWordTails}) can share an offset, their comments are joined.
+   */
+  public static Map<Integer, Object> pointerComments(Map<Object, Integer> pointers) {
+    Map<Integer, List<String>> comments = new TreeMap<>();
+    for (Entry<Object, Integer> pointer : pointers.entrySet()) {
+      comments.computeIfAbsent(pointer.getValue(), offset -> new ArrayList<>()).add(pointer.getKey().toString());
+    }
+    Map<Integer, Object> joined = new TreeMap<>();
+    for (Entry<Integer, List<String>> comment : comments.entrySet()) {
+      Collections.sort(comment.getValue());
+      joined.put(comment.getKey(), String.join(", ", comment.getValue()));
+    }
+    return joined;
   }
 
   public byte[] generate(Path wordBankPath, Path phrasePackPath) throws IOException, WavFileException {
@@ -144,13 +249,65 @@ public class PhrasePackRomGenerator {
 
   private byte[] generate(Path wordBankPath, Path phrasePackPath, Map<Object, Integer> pointers)
           throws IOException, WavFileException {
+    return outputRom(layoutRom(wordBankPath, phrasePackPath, pointers), pointers);
+  }
+
+  /**
+   * As {@link #generate(Path, Path)}, but streams the ROM to the writer rather than returning it. The writer is left
+   * open.
+   */
+  public void generate(Path wordBankPath, Path phrasePackPath, Map<Object, Integer> pointers, RomWriter romWriter)
+          throws IOException, WavFileException {
+    outputRom(layoutRom(wordBankPath, phrasePackPath, pointers), pointers, romWriter);
+  }
+
+  /**
+   * As {@link #generate(Path, Path, Map, RomWriter)}, but writes the ROM to a file in the format for its extension
+   * (see {@link RomFormat}). The ROM is laid out before the file is opened, and the file is only replaced once the
+   * whole ROM has been written, so a build that fails leaves the last good ROM in place.
+   */
+  public void write(Path wordBankPath, Path phrasePackPath, Map<Object, Integer> pointers, Path outputPath)
+          throws IOException, WavFileException {
+    RomLayout romLayout = layoutRom(wordBankPath, phrasePackPath, pointers);
+    RomFormat.write(outputPath, romWriter -> outputRom(romLayout, pointers, romWriter));
+  }
+
+  /**
+   * Lays out the ROM for a phrase pack whose words have already been encoded. The pointers map is filled in with the
+   * offset of every phrase bank, phrase and word.
+   */
+  public byte[] generate(PhrasePack phrasePack, WordBank wordBank, Map<Object, Integer> pointers) throws IOException {
+    return outputRom(layoutRom(phrasePack, wordBank, pointers), pointers);
+  }
+
+  /**
+   * As {@link #generate(PhrasePack, WordBank, Map)}, but streams the ROM to the writer, in order, as it is output. The
+   * writer is left open.
+   */
+  public void generate(PhrasePack phrasePack, WordBank wordBank, Map<Object, Integer> pointers, RomWriter romWriter)
+          throws IOException {
+    outputRom(layoutRom(phrasePack, wordBank, pointers), pointers, romWriter);
+  }
+
+  /*
+   * Parses the phrase pack and encodes the word bank, then lays out the ROM for them.
+   */
+  private RomLayout layoutRom(Path wordBankPath, Path phrasePackPath, Map<Object, Integer> pointers)
+          throws IOException, WavFileException {
     PathPreconditions.checkReadableDirectory(wordBankPath);
     PathPreconditions.checkReadableDirectory(phrasePackPath);
 
     // parse the phrase packs and the word bank
-    PhrasePack phrasePack = new PhrasePackParser().parse(phrasePackPath);
-    WordBank wordBank = new WordBankProcessor().process(wordBankPath);
+    PhrasePack phrasePack = phrasePackParser.parse(phrasePackPath);
+    WordBank wordBank = wordBankProcessor.processParallel(wordBankPath);
+
+    return layoutRom(phrasePack, wordBank, pointers);
+  }
 
+  /*
+   * Works out where everything goes, so the ROM can then be output front to back in one pass.
+   */
+  private RomLayout layoutRom(PhrasePack phrasePack, WordBank wordBank, Map<Object, Integer> pointers) {
     // validate we have a primary bank
     PhraseBank primaryPhraseBank = phrasePack.getPhraseBanks().get("primary");
     if (primaryPhraseBank == null) {
@@ -158,130 +315,288 @@ public class PhrasePackRomGenerator {
     }
 
     // put a nice message in the pointers so we can output decent comment (see main method)
-    pointers.put("ROM Header, word bank start pointer and the primary bank pointer.", 0);
+    pointers.put(HEADER_COMMENT, 0);
 
-    // calculate phrase bank offsets
-    final int wordDataOffset = calculatePhraseBankOffsets(phrasePack, pointers, START_OFFSET);
-    byte[] wordData = extractWordData(wordBank, phrasePack, pointers, wordDataOffset);
-    int endOffset = wordDataOffset + wordData.length;
-    byte[] phraseData = outputPhraseData(phrasePack, pointers, START_OFFSET);
+    // calculate phrase bank offsets, then word offsets, then point the phrases that aren't output at what replaces them
+    SharedPhrases sharedPhrases = SharedPhrases.find(phrasePack);
+    final int wordDataOffset =
+            calculatePhraseBankOffsets(phrasePack, sharedPhrases, pointers, romAddressing.getHeaderSize());
+    SharedWordTails sharedWordTails = findSharedWordTails(wordBank, phrasePack);
+    int endOffset = calculateWordOffsets(phrasePack, sharedWordTails, wordBank, pointers, wordDataOffset);
+    calculateSharedPhraseOffsets(phrasePack, sharedPhrases, pointers);
 
-    int primaryPhraseBankOffset = pointers.get(primaryPhraseBank);
-    byte[] romData = assembleRom(wordDataOffset, primaryPhraseBankOffset, phraseData, wordData);
+    // fail before a byte is output if the pointers can't reach the end of the ROM
+    romAddressing.checkCapacity(endOffset);
 
-    System.out.println("Expected ROM size: " + endOffset + " bytes");
-    System.out.println("Actual ROM size was: " + romData.length + " bytes");
+    return new RomLayout(phrasePack, wordBank, wordDataOffset, pointers.get(primaryPhraseBank), endOffset,
+            sharedPhrases, sharedWordTails);
+  }
 
-    return romData;
+  /*
+   * The size is known up front, so the ROM is written straight into the one array.
+   */
+  private byte[] outputRom(RomLayout romLayout, Map<Object, Integer> pointers) throws IOException {
+    ByteArrayRomWriter romWriter = new ByteArrayRomWriter(romLayout.size);
+    outputRom(romLayout, pointers, romWriter);
+    return romWriter.toByteArray();
   }
 
-  private byte[] assembleRom(int wordDataOffset, int primaryPhraseBankOffset, byte[] phraseData, byte[] wordData)
-          throws IOException {
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    outputPointer(wordDataOffset, outputStream);
-    outputPointer(primaryPhraseBankOffset, outputStream);
-    outputStream.write(phraseData);
-    outputStream.write(wordData);
-    return outputStream.toByteArray();
+  private void outputRom(RomLayout romLayout, Map<Object, Integer> pointers, RomWriter romWriter) throws IOException {
+    PhrasePack phrasePack = romLayout.phrasePack;
+    WordBank wordBank = romLayout.wordBank;
+    CountingRomWriter countingRomWriter = new CountingRomWriter(romWriter);
+
+    countingRomWriter.comment(HEADER_COMMENT);
+    romAddressing.outputHeader(countingRomWriter, romLayout.wordDataOffset, romLayout.primaryPhraseBankOffset);
+    outputPhraseData(phrasePack, romLayout.sharedPhrases, pointers, countingRomWriter);
+    outputWordData(wordBank, phrasePack, romLayout.sharedWordTails, pointers, countingRomWriter);
+
+    int pointerSize = romAddressing.getPointerSize();
+    System.out.println(MessageFormat.format("Single word phrases: {0} point straight at their word, saving {1} bytes",
+            romLayout.sharedPhrases.getInlinedCount(), romLayout.sharedPhrases.getInlinedBytesSaved(pointerSize)));
+    System.out.println(MessageFormat.format("Identical phrases: {0} merged into others, saving {1} bytes",
+            romLayout.sharedPhrases.getMergedCount(), romLayout.sharedPhrases.getMergedBytesSaved(pointerSize)));
+    System.out.println(MessageFormat.format("Shared word tails: {0} words point into others, saving {1} bytes",
+            romLayout.sharedWordTails.getSharedCount(), romLayout.sharedWordTails.getBytesSaved()));
+    System.out.println("Expected ROM size: " + romLayout.size + " bytes");
+    System.out.println("Actual ROM size was: " + countingRomWriter.count + " bytes");
   }
 
   /**
    * We need to calculate the phrase bank offsets first so phrases can point to one-another.
+   *
+   * Only the phrases that are output take up space, the others are pointed at what replaces them once the words have
+   * been placed.
    */
-  private int calculatePhraseBankOffsets(PhrasePack phrasePack, Map<Object, Integer> pointers, int offset) {
+  private int calculatePhraseBankOffsets(PhrasePack phrasePack, SharedPhrases sharedPhrases,
+          Map<Object, Integer> pointers, int offset) {
+    int pointerSize = romAddressing.getPointerSize();
     for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
-      // put phrase bank in pointers
-      pointers.put(phraseBank, offset);
       // grab phrases
       List<Phrase> phrases = phraseBank.getPhrases();
       Preconditions.checkState(phrases.size() <= 255, "We can only support 255 phrases per bank.");
-      // one byte for the phrase count
-      offset++;
-      // phrases count * pointer size for phrase directory
-      offset += phrases.size() * POINTER_SIZE;
+      // one byte for the phrase count, phrases count * pointer size for phrase directory
+      int directorySize = 1 + phrases.size() * pointerSize;
+      // put phrase bank in pointers
+      offset = romAddressing.place(offset, directorySize);
+      pointers.put(phraseBank, offset);
+      offset += directorySize;
       for (Phrase phrase : phrases) {
+        if (!sharedPhrases.isOutput(phrase)) {
+          continue;
+        }
         Preconditions.checkState(phrase.getTokens().size() <= 255, "We can only support 255 tokens per phrase.");
+        // one byte for the token count, token count * pointer size for the phrases themselves
+        int phraseSize = 1 + phrase.getTokens().size() * pointerSize;
         // put phrase in pointers
+        offset = romAddressing.place(offset, phraseSize);
         pointers.put(phrase, offset);
-        // one byte for the token count
-        offset++;
-        // add token count * pointer size for the phrases themselves
-        offset += phrase.getTokens().size() * POINTER_SIZE;
+        offset += phraseSize;
+      }
+    }
+    return offset;
+  }
+
+  /*
+   * Checks the word bank has every word required by the phrase pack, and finds which of them can share their data.
+   */
+  private SharedWordTails findSharedWordTails(WordBank wordBank, PhrasePack phrasePack) {
+    Map<String, byte[]> words = new LinkedHashMap<>();
+    for (String word : phrasePack.getWords().keySet()) {
+      Preconditions.checkState(wordBank.containsKey(word),
+              MessageFormat.format("Word \"{0}\" was not found in word bank.", word));
+      words.put(word, wordBank.get(word));
+    }
+    return SharedWordTails.find(words);
+  }
+
+  /*
+   * Adds a pointer to the pointers for each word, returns the offset of the end of the word data.
+   *
+   * Only the host words take up space, the others point into them.
+   */
+  private int calculateWordOffsets(PhrasePack phrasePack, SharedWordTails sharedWordTails, WordBank wordBank,
+          Map<Object, Integer> pointers, int offset) {
+    Map<String, Word> words = phrasePack.getWords();
+    for (Entry<String, Word> word : words.entrySet()) {
+      if (sharedWordTails.isHost(word.getKey())) {
+        int wordSize = wordBank.get(word.getKey()).length;
+        offset = romAddressing.place(offset, wordSize);
+        pointers.put(word.getValue(), offset);
+        offset += wordSize;
+      }
+    }
+    for (Entry<String, Word> word : words.entrySet()) {
+      if (!sharedWordTails.isHost(word.getKey())) {
+        int hostOffset = pointers.get(words.get(sharedWordTails.getHost(word.getKey())));
+        pointers.put(word.getValue(), hostOffset + sharedWordTails.getOffset(word.getKey()));
       }
     }
     return offset;
   }
 
-  private byte[] outputPhraseData(PhrasePack phrasePack, Map<Object, Integer> pointers, int offset) throws IOException {
-    ByteArrayOutputStream phraseBankOutputStream = new ByteArrayOutputStream();
+  /*
+   * Points each single word phrase at its word and each merged phrase at the phrase that was output in its place.
+   */
+  private void calculateSharedPhraseOffsets(PhrasePack phrasePack, SharedPhrases sharedPhrases,
+          Map<Object, Integer> pointers) {
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      for (Phrase phrase : phraseBank.getPhrases()) {
+        Word word = sharedPhrases.getInlinedWord(phrase);
+        if (word != null) {
+          pointers.put(phrase, pointers.get(word));
+        } else if (sharedPhrases.getMergedWith(phrase) != null) {
+          pointers.put(phrase, pointers.get(sharedPhrases.getMergedWith(phrase)));
+        }
+      }
+    }
+  }
 
+  /*
+   * Each phrase bank is its phrase directory followed by its phrases, so every bank is walked twice.
+   */
+  private void outputPhraseData(PhrasePack phrasePack, SharedPhrases sharedPhrases, Map<Object, Integer> pointers,
+          CountingRomWriter romWriter) throws IOException {
     for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
       // grab phrases
       List<Phrase> phrases = phraseBank.getPhrases();
 
       // one byte for the phrase count
-      offset++;
-
-      // phrases count * pointer size for phrase directory
-      offset += phrases.size() * POINTER_SIZE;
-
-      // one byte for the phrase count
-      phraseBankOutputStream.write((byte) phrases.size());
+      outputPadding(pointers.get(phraseBank), romWriter);
+      romWriter.comment(phraseBank);
+      romWriter.write(phrases.size());
 
-      ByteArrayOutputStream phraseDataOutputStream = new ByteArrayOutputStream();
+      // write the pointer to each phrase
       for (Phrase phrase : phrases) {
-        // write pointer
-        outputPointer(offset, phraseBankOutputStream);
+        romAddressing.outputPointer(romWriter, pointers.get(phrase));
+      }
 
+      for (Phrase phrase : phrases) {
+        if (!sharedPhrases.isOutput(phrase)) {
+          continue;
+        }
         // write a byte for token count
-        phraseDataOutputStream.write(phrase.getTokens().size());
+        outputPadding(pointers.get(phrase), romWriter);
+        romWriter.comment(phrase);
+        romWriter.write(phrase.getTokens().size());
 
         // write tokens
         for (PhraseToken token : phrase.getTokens()) {
           Integer pointer = pointers.get(token);
           Preconditions.checkState(pointer != null, "Could not find pointer for token.");
-          outputPointer(pointer, phraseDataOutputStream);
+          romAddressing.outputPointer(romWriter, pointer);
         }
+      }
+    }
+  }
 
-        // add byte for token count
-        offset++;
-        // add token count * pointer size for the phrases themselves
-        offset += phrase.getTokens().size() * POINTER_SIZE;
+  /*
+   * Outputs the word data required to support the phrase pack, in the same order the offsets were calculated. Words
+   * sharing a host's data are commented where they start within it.
+   */
+  private void outputWordData(WordBank wordBank, PhrasePack phrasePack, SharedWordTails sharedWordTails,
+          Map<Object, Integer> pointers, CountingRomWriter romWriter) throws IOException {
+    Map<String, List<Word>> sharingWords = new HashMap<>();
+    for (Entry<String, Word> word : phrasePack.getWords().entrySet()) {
+      if (!sharedWordTails.isHost(word.getKey())) {
+        sharingWords.computeIfAbsent(sharedWordTails.getHost(word.getKey()), host -> new ArrayList<>())
+                .add(word.getValue());
       }
-      phraseBankOutputStream.write(phraseDataOutputStream.toByteArray());
     }
 
-    return phraseBankOutputStream.toByteArray();
+    for (Entry<String, Word> word : phrasePack.getWords().entrySet()) {
+      if (!sharedWordTails.isHost(word.getKey())) {
+        continue;
+      }
+      byte[] data = wordBank.get(word.getKey());
+      outputPadding(pointers.get(word.getValue()), romWriter);
+      romWriter.comment(word.getValue());
+
+      int written = 0;
+      List<Word> sharing = sharingWords.getOrDefault(word.getKey(), Collections.emptyList());
+      sharing.sort(Comparator.comparingInt(sharingWord -> sharedWordTails.getOffset(sharingWord.getWord())));
+      for (Word sharingWord : sharing) {
+        int offset = sharedWordTails.getOffset(sharingWord.getWord());
+        romWriter.write(data, written, offset - written);
+        romWriter.comment(sharingWord);
+        written = offset;
+      }
+      romWriter.write(data, written, data.length - written);
+    }
   }
 
+  /*
+   * Pads up to where the next thing was placed, only ever needed when something was moved to the start of a bank.
+   */
+  private void outputPadding(int offset, CountingRomWriter romWriter) throws IOException {
+    romAddressing.outputPadding(romWriter, offset - romWriter.count);
+  }
 
   /*
-   * Extracts the word data required to support the phrase pack.
-   *
-   * Adds a pointer to the pointers for each word added.
+   * What goes in the ROM, where its sections start, its total size and which phrases and words share their data.
    */
-  private byte[] extractWordData(WordBank wordBank, PhrasePack phrasePack, Map<Object, Integer> pointers,
-          int startOffset) throws IOException {
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    for (Entry<String, Word> word : phrasePack.getWords().entrySet()) {
-      Preconditions.checkState(wordBank.containsKey(word.getKey()),
-              MessageFormat.format("Word \"{0}\" was not found in word bank.", word.getKey()));
-      pointers.put(word.getValue(), startOffset + outputStream.size());
-      outputStream.write(wordBank.get(word.getKey()));
+  private static class RomLayout {
+
+    private final PhrasePack phrasePack;
+    private final WordBank wordBank;
+    private final int wordDataOffset;
+    private final int primaryPhraseBankOffset;
+    private final int size;
+    private final SharedPhrases sharedPhrases;
+    private final SharedWordTails sharedWordTails;
+
+    public RomLayout(PhrasePack phrasePack, WordBank wordBank, int wordDataOffset, int primaryPhraseBankOffset,
+            int size, SharedPhrases sharedPhrases, SharedWordTails sharedWordTails) {
+      this.phrasePack = phrasePack;
+      this.wordBank = wordBank;
+      this.wordDataOffset = wordDataOffset;
+      this.primaryPhraseBankOffset = primaryPhraseBankOffset;
+      this.size = size;
+      this.sharedPhrases = sharedPhrases;
+      this.sharedWordTails = sharedWordTails;
     }
-    return outputStream.toByteArray();
+
   }
 
   /*
-   * Pushes a pointer out to the byte array output stream. Note Endianness!
-   *
-   * The correct way to assemble the pointer at the C side will be:
-   *
-   * bytes[n] | (int)bytes[n+1] << 8
+   * Counts the bytes on their way to the writer, as a check on the layout.
    */
-  private void outputPointer(int pointer, ByteArrayOutputStream byteArrayOutputStream) {
-    byteArrayOutputStream.write((byte) (pointer & 0xFF));
-    byteArrayOutputStream.write((byte) ((pointer >> 8) & 0xFF));
+  private static class CountingRomWriter implements RomWriter {
+
+    private final RomWriter romWriter;
+    private int count;
+
+    public CountingRomWriter(RomWriter romWriter) {
+      this.romWriter = romWriter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      romWriter.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+      romWriter.write(data, offset, length);
+      count += length;
+    }
+
+    @Override
+    public void comment(Object comment) throws IOException {
+      romWriter.comment(comment);
+    }
+
+    @Override
+    public void close() throws IOException {
+      romWriter.close();
+    }
+
+    @Override
+    public void abort() throws IOException {
+      romWriter.abort();
+    }
+
   }
 
 }
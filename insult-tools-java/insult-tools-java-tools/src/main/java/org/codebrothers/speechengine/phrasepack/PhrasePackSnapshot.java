@@ -0,0 +1,281 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codebrothers.speechengine.phrasepack.token.Phrase;
+import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
+import org.codebrothers.speechengine.phrasepack.token.PhraseToken;
+import org.codebrothers.speechengine.phrasepack.token.Word;
+import org.codebrothers.speechengine.util.AtomicFileUtils;
+
+/**
+ * A parsed phrase pack saved in binary, so it can be loaded again without parsing the phrase bank files, for as long as
+ * they don't change.
+ *
+ * <h2>Format</h2>
+ *
+ * Everything is big endian, strings are modified UTF-8 as written by {@link DataOutputStream#writeUTF(String)}.
+ *
+ * <ul>
+ * <li>Header: magic number, format version.</li>
+ * <li>Sources: the number of phrase bank files, then each one's bank id, modification time and size, in bank id
+ * order. Then a SHA-256 of their contents.</li>
+ * <li>Words: the number of words, then each word, in the pack's order. Each word is only held once.</li>
+ * <li>Banks: the number of banks, then each bank id, in the pack's order.</li>
+ * <li>Phrases: for each bank, the number of phrases, then for each phrase the number of tokens and the tokens. A token
+ * is a word's index, or the complement (~) of a bank's index.</li>
+ * </ul>
+ *
+ * <h2>Invalidation</h2>
+ *
+ * A snapshot is used if the phrase bank files have the same names, modification times and sizes as when it was
+ * written. If not, e.g. after a fresh checkout, their contents are hashed and it's used if the hash matches, then
+ * written again with the new times. Anything else, a snapshot that's missing, of another version or unreadable, is
+ * a miss and the pack is parsed.
+ *
+ * Snapshots are written to a temporary file and moved into place, so several tools can share a snapshot directory.
+ */
+final class PhrasePackSnapshot {
+
+  /*
+   * "PPSN", then bumped whenever the format changes, so older snapshots are parsed again rather than misread.
+   */
+  private static final int MAGIC = 0x5050534E;
+  private static final int VERSION = 1;
+
+  private static final int HASH_BYTES = 32;
+
+  private static final String SNAPSHOT_EXTENSION = ".phrasepack";
+
+  private final Path snapshotDirectory;
+  private final Path snapshotFile;
+
+  // the phrase bank files in bank id order, as they were when the snapshot was made
+  private final List<String> bankIds;
+  private final List<Path> bankPaths;
+  private final long[] lastModified;
+  private final long[] sizes;
+
+  // hashed only when the times don't match, or a new snapshot is saved
+  private byte[] contentHash;
+
+  /**
+   * Stamps the phrase bank files, so it should be made before they are parsed. That way a file changing part way
+   * through is picked up next time.
+   */
+  PhrasePackSnapshot(Path snapshotDirectory, Path phrasePackPath, Map<String, Path> paths) throws IOException {
+    this.snapshotDirectory = snapshotDirectory;
+    this.snapshotFile = snapshotDirectory.resolve(snapshotName(phrasePackPath));
+
+    TreeMap<String, Path> sortedPaths = new TreeMap<>(paths);
+    bankIds = new ArrayList<>(sortedPaths.keySet());
+    bankPaths = new ArrayList<>(sortedPaths.values());
+    lastModified = new long[bankPaths.size()];
+    sizes = new long[bankPaths.size()];
+    for (int i = 0; i < bankPaths.size(); i++) {
+      BasicFileAttributes attributes = Files.readAttributes(bankPaths.get(i), BasicFileAttributes.class);
+      lastModified[i] = attributes.lastModifiedTime().toMillis();
+      sizes[i] = attributes.size();
+    }
+  }
+
+  /**
+   * Returns the snapshotted pack, or null if there's no snapshot of the phrase bank files as they are now.
+   */
+  PhrasePack load() throws IOException {
+    PhrasePack phrasePack = read();
+    if (phrasePack == null) {
+      // hashed before the files are parsed, so a snapshot never holds a hash of newer contents than its pack
+      contentHash();
+    }
+    return phrasePack;
+  }
+
+  private PhrasePack read() throws IOException {
+    byte[] data;
+    try {
+      data = Files.readAllBytes(snapshotFile);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    // the data is all in memory, so anything going wrong reading it means the snapshot is bad
+    PhrasePack phrasePack;
+    boolean stampsMatch;
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      stampsMatch = readStampsMatch(in);
+      byte[] storedHash = new byte[HASH_BYTES];
+      in.readFully(storedHash);
+      if (!stampsMatch && !Arrays.equals(storedHash, contentHash())) {
+        return null;
+      }
+      phrasePack = readPhrasePack(in);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+
+    // the files were touched but not changed, save the new times so they needn't be hashed next time
+    if (!stampsMatch) {
+      save(phrasePack);
+    }
+    return phrasePack;
+  }
+
+  /**
+   * Saves the pack parsed after a miss, or loaded from a snapshot whose files were touched but not changed.
+   */
+  void save(PhrasePack phrasePack) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(bankIds.size());
+      for (int i = 0; i < bankIds.size(); i++) {
+        out.writeUTF(bankIds.get(i));
+        out.writeLong(lastModified[i]);
+        out.writeLong(sizes[i]);
+      }
+      out.write(contentHash());
+      writePhrasePack(phrasePack, out);
+    }
+
+    Files.createDirectories(snapshotDirectory);
+    AtomicFileUtils.write(snapshotFile, bytes.toByteArray());
+  }
+
+  private boolean readStampsMatch(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    boolean match = count == bankIds.size();
+    for (int i = 0; i < count; i++) {
+      String bankId = in.readUTF();
+      long time = in.readLong();
+      long size = in.readLong();
+      match = match && bankId.equals(bankIds.get(i)) && time == lastModified[i] && size == sizes[i];
+    }
+    return match;
+  }
+
+  private static void writePhrasePack(PhrasePack phrasePack, DataOutputStream out) throws IOException {
+    Map<Word, Integer> wordIndices = new HashMap<>();
+    out.writeInt(phrasePack.getWords().size());
+    for (Word word : phrasePack.getWords().values()) {
+      out.writeUTF(word.getWord());
+      wordIndices.put(word, wordIndices.size());
+    }
+
+    Map<PhraseBank, Integer> bankIndices = new HashMap<>();
+    out.writeInt(phrasePack.getPhraseBanks().size());
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      out.writeUTF(phraseBank.getId());
+      bankIndices.put(phraseBank, bankIndices.size());
+    }
+
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      out.writeInt(phraseBank.size());
+      for (Phrase phrase : phraseBank.getPhrases()) {
+        out.writeInt(phrase.getTokens().size());
+        for (PhraseToken token : phrase.getTokens()) {
+          out.writeInt(token instanceof Word ? wordIndices.get(token) : ~bankIndices.get(token));
+        }
+      }
+    }
+  }
+
+  private static PhrasePack readPhrasePack(DataInputStream in) throws IOException {
+    Word[] words = new Word[in.readInt()];
+    LinkedHashMap<String, Word> wordMap = new LinkedHashMap<>();
+    for (int i = 0; i < words.length; i++) {
+      words[i] = new Word(in.readUTF());
+      wordMap.put(words[i].getWord(), words[i]);
+    }
+
+    PhraseBank[] phraseBanks = new PhraseBank[in.readInt()];
+    LinkedHashMap<String, PhraseBank> phraseBankMap = new LinkedHashMap<>();
+    for (int i = 0; i < phraseBanks.length; i++) {
+      phraseBanks[i] = new PhraseBank(in.readUTF());
+      phraseBankMap.put(phraseBanks[i].getId(), phraseBanks[i]);
+    }
+
+    for (PhraseBank phraseBank : phraseBanks) {
+      int phraseCount = in.readInt();
+      for (int p = 0; p < phraseCount; p++) {
+        PhraseToken[] tokens = new PhraseToken[in.readInt()];
+        for (int t = 0; t < tokens.length; t++) {
+          int token = in.readInt();
+          if (token >= 0 ? token >= words.length : ~token >= phraseBanks.length) {
+            throw new IOException(MessageFormat.format("Token {0,number,#} is out of range.", token));
+          }
+          tokens[t] = token >= 0 ? words[token] : phraseBanks[~token];
+        }
+        phraseBank.addPhrase(new Phrase(Arrays.asList(tokens)));
+      }
+    }
+    return new PhrasePack(wordMap, phraseBankMap);
+  }
+
+  /*
+   * Each bank id and its file's length and bytes, in bank id order.
+   */
+  private byte[] contentHash() throws IOException {
+    if (contentHash == null) {
+      MessageDigest digest = sha256();
+      byte[] buffer = new byte[8192];
+      for (int i = 0; i < bankPaths.size(); i++) {
+        digest.update((bankIds.get(i) + "\n" + Files.size(bankPaths.get(i)) + "\n").getBytes(StandardCharsets.UTF_8));
+        try (InputStream inputStream = Files.newInputStream(bankPaths.get(i))) {
+          int read;
+          while ((read = inputStream.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+          }
+        }
+      }
+      contentHash = digest.digest();
+    }
+    return contentHash;
+  }
+
+  /*
+   * Named for the pack directory, so packs can share a snapshot directory.
+   */
+  private static String snapshotName(Path phrasePackPath) {
+    String path = phrasePackPath.toAbsolutePath().normalize().toString();
+    byte[] hash = sha256().digest(path.getBytes(StandardCharsets.UTF_8));
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 8; i++) {
+      name.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+    }
+    return name.append(SNAPSHOT_EXTENSION).toString();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.", e);
+    }
+  }
+
+}
@@ -0,0 +1,212 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import org.codebrothers.speechengine.rom.RomWriter;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * How pointers in a phrase pack ROM address the image: how wide they are and whether the image is split into banks.
+ *
+ * <h2>Flat</h2>
+ *
+ * A pointer is simply the address, little endian, in 2, 3 or 4 bytes. The ROM can be as large as the pointers can
+ * address: 64k, 16M or 4G.
+ *
+ * <h2>Banked</h2>
+ *
+ * The image is split into banks of a fixed size, a power of two, e.g. one per EEPROM chip. A pointer is the offset
+ * within the bank, little endian, followed by a byte giving the bank number. So a 3 byte pointer can address up to 256
+ * banks of 64k each. Nothing the C side reads in one go (a phrase bank's directory, a phrase, a word) is allowed to
+ * straddle two banks; anything that doesn't fit in what is left of a bank is moved to the start of the next, and the
+ * gap is padded out with 0xFF, as an erased EEPROM would be.
+ *
+ * The banks are laid out one after another in the image, so bank n starts at n * bank size.
+ *
+ * In both layouts the pointer read as a little endian number grows with the address, so comparing against the word
+ * bank start pointer still tells phrase banks and words apart.
+ */
+public final class RomAddressing {
+
+  /**
+   * 16-bit pointers, the original layout.
+   */
+  public static final RomAddressing DEFAULT = flat(2);
+
+  /*
+   * A bank needs room for at least the ROM header.
+   */
+  private static final int MIN_BANK_SIZE = 256;
+  private static final int MAX_BANKS = 256;
+
+  private static final int PAD_BYTE = 0xFF;
+
+  private final int pointerSize;
+  // zero when the image is not banked
+  private final int bankSize;
+
+  private RomAddressing(int pointerSize, int bankSize) {
+    this.pointerSize = pointerSize;
+    this.bankSize = bankSize;
+  }
+
+  /**
+   * Pointers of the given number of bytes, 2, 3 or 4, holding the address as it is.
+   */
+  public static RomAddressing flat(int pointerSize) {
+    Preconditions.checkArgument(pointerSize >= 2 && pointerSize <= 4,
+            MessageFormat.format("Pointers must be 2, 3 or 4 bytes, not {0}.", pointerSize));
+    return new RomAddressing(pointerSize, 0);
+  }
+
+  /**
+   * Pointers of the given number of bytes, 3 or 4, holding an offset within a bank and the bank number.
+   */
+  public static RomAddressing banked(int pointerSize, int bankSize) {
+    Preconditions.checkArgument(pointerSize == 3 || pointerSize == 4,
+            MessageFormat.format("Banked pointers must be 3 or 4 bytes, not {0}.", pointerSize));
+    Preconditions.checkArgument(Integer.bitCount(bankSize) == 1 && bankSize >= MIN_BANK_SIZE,
+            MessageFormat.format("Bank size must be a power of two of at least {0}, not {1,number,#}.", MIN_BANK_SIZE,
+                    bankSize));
+    Preconditions.checkArgument((bankSize - 1L) >>> (8 * (pointerSize - 1)) == 0,
+            MessageFormat.format("A {0,number,#} byte bank is too large for {1}-bit pointers.", bankSize,
+                    pointerSize * 8));
+    return new RomAddressing(pointerSize, bankSize);
+  }
+
+  public int getPointerSize() {
+    return pointerSize;
+  }
+
+  /**
+   * The size of each bank, or zero when the image is not banked.
+   */
+  public int getBankSize() {
+    return bankSize;
+  }
+
+  public boolean isBanked() {
+    return bankSize > 0;
+  }
+
+  /**
+   * The most bytes a ROM can hold.
+   */
+  public long getCapacity() {
+    return isBanked() ? (long) bankSize * MAX_BANKS : 1L << (8 * pointerSize);
+  }
+
+  /**
+   * The ROM header, see {@link #outputHeader(RomWriter, int, int)}.
+   */
+  public int getHeaderSize() {
+    return 2 + 2 * pointerSize;
+  }
+
+  /**
+   * The address for something of the given size that would otherwise go at the given address. In a banked layout,
+   * when it doesn't fit in what is left of the bank it goes at the start of the next one.
+   */
+  public int place(int address, int size) {
+    if (!isBanked()) {
+      return address;
+    }
+    Preconditions.checkState(size <= bankSize,
+            MessageFormat.format("{0,number,#} bytes won''t fit in a {1,number,#} byte bank.", size, bankSize));
+    int offset = address & (bankSize - 1);
+    return offset + size > bankSize ? address - offset + bankSize : address;
+  }
+
+  /**
+   * Fails unless a ROM of the given size can be addressed.
+   */
+  public void checkCapacity(long romSize) {
+    if (romSize > getCapacity()) {
+      throw new IllegalStateException(MessageFormat.format(
+              "ROM of {0,number,#} bytes is too large for {1}, which can only address {2,number,#} bytes.", romSize,
+              this, getCapacity()));
+    }
+  }
+
+  /**
+   * Outputs the ROM header:
+   *
+   * <pre>
+   * [pointer size (1 byte)][log2 bank size, 0 if not banked (1 byte)][word bank start pointer][primary bank pointer]
+   * </pre>
+   */
+  public void outputHeader(RomWriter romWriter, int wordBankOffset, int primaryPhraseBankOffset) throws IOException {
+    romWriter.write(pointerSize);
+    romWriter.write(isBanked() ? Integer.numberOfTrailingZeros(bankSize) : 0);
+    outputPointer(romWriter, wordBankOffset);
+    outputPointer(romWriter, primaryPhraseBankOffset);
+  }
+
+  /**
+   * Pushes a pointer out to the ROM writer. Note Endianness!
+   *
+   * The correct way to assemble a 16-bit pointer at the C side will be:
+   *
+   * bytes[n] | (int)bytes[n+1] << 8
+   */
+  public void outputPointer(RomWriter romWriter, int address) throws IOException {
+    checkCapacity(address + 1L);
+    long pointer = address;
+    if (isBanked()) {
+      int offsetBits = 8 * (pointerSize - 1);
+      pointer = (long) (address / bankSize) << offsetBits | address & (bankSize - 1);
+    }
+    for (int i = 0; i < pointerSize; i++) {
+      romWriter.write((int) (pointer >>> (8 * i)) & 0xFF);
+    }
+  }
+
+  /**
+   * Outputs the given number of bytes of padding.
+   */
+  public void outputPadding(RomWriter romWriter, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      romWriter.write(PAD_BYTE);
+    }
+  }
+
+  /**
+   * Parses the layout as given on the command line, the pointer width in bits, 16, 24 or 32, with an optional bank
+   * size after a colon, e.g. "24:64k".
+   */
+  public static RomAddressing parse(String layout) {
+    String[] parts = layout.split(":", 2);
+    int pointerBits;
+    try {
+      pointerBits = Integer.parseInt(parts[0]);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(MessageFormat.format("\"{0}\" is not a pointer width.", parts[0]));
+    }
+    Preconditions.checkArgument(pointerBits % 8 == 0,
+            MessageFormat.format("Pointers must be 16, 24 or 32 bits, not {0}.", pointerBits));
+    return parts.length > 1 ? banked(pointerBits / 8, parseSize(parts[1])) : flat(pointerBits / 8);
+  }
+
+  private static int parseSize(String size) {
+    String digits = size.toLowerCase();
+    int multiplier = 1;
+    if (digits.endsWith("k")) {
+      multiplier = 1024;
+      digits = digits.substring(0, digits.length() - 1);
+    }
+    try {
+      return Math.multiplyExact(Integer.parseInt(digits), multiplier);
+    } catch (NumberFormatException | ArithmeticException e) {
+      throw new IllegalArgumentException(MessageFormat.format("\"{0}\" is not a bank size.", size));
+    }
+  }
+
+  @Override
+  public String toString() {
+    String pointers = pointerSize * 8 + "-bit pointers";
+    return isBanked() ? MessageFormat.format("{0} in {1,number,#} byte banks", pointers, bankSize) : pointers;
+  }
+
+}
@@ -0,0 +1,107 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codebrothers.speechengine.phrasepack.token.Phrase;
+import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
+import org.codebrothers.speechengine.phrasepack.token.PhraseToken;
+import org.codebrothers.speechengine.phrasepack.token.Word;
+
+/**
+ * Finds the phrases that needn't have their own phrase data in the ROM.
+ *
+ * A phrase of a single word is inlined, the phrase bank's pointer points straight at the word rather than at a phrase
+ * holding one pointer to it. A phrase made of exactly the same tokens as one seen before, in any bank, is merged with
+ * it, both pointers point at the one copy.
+ *
+ * A phrase of a single phrase bank can't be inlined: a phrase bank pointer in a phrase bank's directory would look just
+ * like a phrase pointer.
+ *
+ * The phrases that still need their own data are output, the rest point at a word or at an output phrase.
+ */
+public class SharedPhrases {
+
+  private final Map<Phrase, Word> inlined;
+  private final Map<Phrase, Phrase> merged;
+  private final int mergedTokenCount;
+
+  private SharedPhrases(Map<Phrase, Word> inlined, Map<Phrase, Phrase> merged, int mergedTokenCount) {
+    this.inlined = inlined;
+    this.merged = merged;
+    this.mergedTokenCount = mergedTokenCount;
+  }
+
+  /**
+   * Finds the phrases that can be inlined or merged, the phrase banks in order. Where phrases are identical, the first
+   * of them is output.
+   */
+  public static SharedPhrases find(PhrasePack phrasePack) {
+    Map<Phrase, Word> inlined = new HashMap<>();
+    Map<Phrase, Phrase> merged = new HashMap<>();
+    int mergedTokenCount = 0;
+
+    // the words and phrase banks are the same instances wherever they are used, so the token lists compare as they are
+    Map<List<PhraseToken>, Phrase> outputPhrases = new HashMap<>();
+    for (PhraseBank phraseBank : phrasePack.getPhraseBanks().values()) {
+      for (Phrase phrase : phraseBank.getPhrases()) {
+        List<PhraseToken> tokens = phrase.getTokens();
+        if (tokens.size() == 1 && tokens.get(0) instanceof Word) {
+          inlined.put(phrase, (Word) tokens.get(0));
+          continue;
+        }
+        Phrase outputPhrase = outputPhrases.putIfAbsent(tokens, phrase);
+        if (outputPhrase != null) {
+          merged.put(phrase, outputPhrase);
+          mergedTokenCount += tokens.size();
+        }
+      }
+    }
+    return new SharedPhrases(inlined, merged, mergedTokenCount);
+  }
+
+  /**
+   * Whether the phrase needs its own data in the ROM.
+   */
+  public boolean isOutput(Phrase phrase) {
+    return !inlined.containsKey(phrase) && !merged.containsKey(phrase);
+  }
+
+  /**
+   * Returns the word a single word phrase was inlined as, or null.
+   */
+  public Word getInlinedWord(Phrase phrase) {
+    return inlined.get(phrase);
+  }
+
+  /**
+   * Returns the phrase an identical phrase was merged with, or null.
+   */
+  public Phrase getMergedWith(Phrase phrase) {
+    return merged.get(phrase);
+  }
+
+  public int getInlinedCount() {
+    return inlined.size();
+  }
+
+  public int getMergedCount() {
+    return merged.size();
+  }
+
+  /**
+   * Bytes saved by inlining, each phrase would have been a token count and one pointer.
+   */
+  public int getInlinedBytesSaved(int pointerSize) {
+    return inlined.size() * (1 + pointerSize);
+  }
+
+  /**
+   * Bytes saved by merging, each phrase would have been a token count and a pointer per token.
+   */
+  public int getMergedBytesSaved(int pointerSize) {
+    return merged.size() + mergedTokenCount * pointerSize;
+  }
+
+}
@@ -0,0 +1,157 @@
+package org.codebrothers.speechengine.phrasepack;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Finds words whose encoded data is the tail of another word's, so the ROM only needs to hold it once.
+ *
+ * Talkie plays a word from its pointer to the first stop frame, so a word can point part way into another word, as long
+ * as everything from there to the stop frame is exactly its own data. A tail is only ever shared from a frame that
+ * starts on a byte boundary, pointers address bytes not bits. Words often end with the same run of silent frames, and
+ * short words like pauses can be nothing else, so they can disappear into longer words entirely. Identical words share
+ * all of their data.
+ *
+ * A tail shared by words whose beginnings differ can't be shared, the data would have to jump from one to the other.
+ *
+ * The words that still need their own data are hosts, the rest point into a host.
+ */
+public class SharedWordTails {
+
+  /*
+   * Frame sizes in bits, see LPCParameters: energy only for a silent or stop frame, then the repeat flag and pitch,
+   * then 4 reflection coefficients for an unvoiced frame or 10 for a voiced one.
+   */
+  private static final int ENERGY_BITS = 4;
+  private static final int REPEAT_FRAME_BITS = ENERGY_BITS + 1 + 6;
+  private static final int UNVOICED_FRAME_BITS = REPEAT_FRAME_BITS + 5 + 5 + 4 + 4;
+  private static final int VOICED_FRAME_BITS = UNVOICED_FRAME_BITS + 4 + 4 + 4 + 3 + 3 + 3;
+
+  private static final int SILENT_ENERGY = 0;
+  private static final int STOP_ENERGY = 15;
+
+  // words pointing into a host, and where in the host their data starts
+  private final Map<String, Tail> tails;
+  private final int bytesSaved;
+
+  private SharedWordTails(Map<String, Tail> tails, int bytesSaved) {
+    this.tails = tails;
+    this.bytesSaved = bytesSaved;
+  }
+
+  /**
+   * Finds the tails the words can share. Where words are identical, the first of them is the host.
+   */
+  public static SharedWordTails find(Map<String, byte[]> words) {
+    // longest first, so a host has always been seen before any word that could point into it
+    List<Entry<String, byte[]>> entries = new ArrayList<>(words.entrySet());
+    entries.sort(Comparator.comparingInt((Entry<String, byte[]> word) -> word.getValue().length).reversed());
+
+    // every frame aligned tail of every host so far, keyed by its content
+    Map<ByteBuffer, Tail> hostTails = new HashMap<>();
+    Map<String, Tail> tails = new HashMap<>();
+    int bytesSaved = 0;
+    for (Entry<String, byte[]> word : entries) {
+      byte[] data = word.getValue();
+      Tail tail = hostTails.get(ByteBuffer.wrap(data));
+      if (tail != null) {
+        tails.put(word.getKey(), tail);
+        bytesSaved += data.length;
+        continue;
+      }
+      for (int offset : frameAlignedOffsets(data)) {
+        hostTails.putIfAbsent(ByteBuffer.wrap(data, offset, data.length - offset), new Tail(word.getKey(), offset));
+      }
+    }
+    return new SharedWordTails(tails, bytesSaved);
+  }
+
+  /**
+   * Whether the word needs its own data in the ROM.
+   */
+  public boolean isHost(String word) {
+    return !tails.containsKey(word);
+  }
+
+  /**
+   * The host whose data a shared word points into, the word itself for a host.
+   */
+  public String getHost(String word) {
+    Tail tail = tails.get(word);
+    return tail == null ? word : tail.host;
+  }
+
+  /**
+   * Where a shared word's data starts within its host, zero for a host.
+   */
+  public int getOffset(String word) {
+    Tail tail = tails.get(word);
+    return tail == null ? 0 : tail.offset;
+  }
+
+  public int getSharedCount() {
+    return tails.size();
+  }
+
+  public int getBytesSaved() {
+    return bytesSaved;
+  }
+
+  /*
+   * The byte offsets in the data that a frame starts at, up to and including the stop frame. Talkie reads each byte
+   * from its lowest bit up, the encoder reverses the bits of every byte to suit.
+   */
+  static List<Integer> frameAlignedOffsets(byte[] data) {
+    List<Integer> offsets = new ArrayList<>();
+    int totalBits = data.length * 8;
+    int bit = 0;
+    while (bit + ENERGY_BITS <= totalBits) {
+      if ((bit & 7) == 0) {
+        offsets.add(bit >> 3);
+      }
+      int energy = readBits(data, bit, ENERGY_BITS);
+      if (energy == STOP_ENERGY) {
+        break;
+      }
+      if (energy == SILENT_ENERGY) {
+        bit += ENERGY_BITS;
+      } else if (readBits(data, bit + ENERGY_BITS, 1) == 1) {
+        bit += REPEAT_FRAME_BITS;
+      } else {
+        boolean unvoiced = readBits(data, bit + ENERGY_BITS + 1, 6) == 0;
+        bit += unvoiced ? UNVOICED_FRAME_BITS : VOICED_FRAME_BITS;
+      }
+    }
+    return offsets;
+  }
+
+  /*
+   * Reads a field, its high bit first. Bits past the end of the data read as zero.
+   */
+  private static int readBits(byte[] data, int bit, int count) {
+    int value = 0;
+    for (int i = bit; i < bit + count; i++) {
+      int b = (i >> 3) < data.length ? data[i >> 3] : 0;
+      value = value << 1 | (b >> (i & 7)) & 1;
+    }
+    return value;
+  }
+
+  private static class Tail {
+
+    private final String host;
+    private final int offset;
+
+    public Tail(String host, int offset) {
+      this.host = host;
+      this.offset = offset;
+    }
+
+  }
+
+}
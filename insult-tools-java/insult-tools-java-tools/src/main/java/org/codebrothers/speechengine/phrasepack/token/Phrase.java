@@ -1,6 +1,7 @@
 package org.codebrothers.speechengine.phrasepack.token;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class Phrase implements PhraseGenerator {
 
@@ -15,9 +16,9 @@ public class Phrase implements PhraseGenerator {
   }
 
   @Override
-  public void renderPhrase(StringBuilder stringBuilder) {
+  public void renderPhrase(StringBuilder stringBuilder, SplittableRandom random) {
     for (PhraseToken token : tokens) {
-      token.renderPhrase(stringBuilder);
+      token.renderPhrase(stringBuilder, random);
     }
   }
 
@@ -2,12 +2,16 @@ package org.codebrothers.speechengine.phrasepack.token;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
+/**
+ * A bank of phrases, one picked at random each time the bank is rendered.
+ *
+ * Generating is thread safe once the bank is populated. Without a random of their own, threads each use their own
+ * SplittableRandom, so generation scales with the threads rather than queueing up on one shared seed.
+ */
 public class PhraseBank implements PhraseToken {
 
-  private static final Random RANDOM = new Random();
-
   private final String id;
   private final List<Phrase> phrases = new ArrayList<Phrase>();
 
@@ -29,11 +33,25 @@ public class PhraseBank implements PhraseToken {
   }
 
   public String generatePhrase() {
+    return generatePhrase(ThreadRandoms.current());
+  }
+
+  public String generatePhrase(SplittableRandom random) {
     StringBuilder stringBuilder = new StringBuilder();
-    renderPhrase(stringBuilder);
+    renderPhrase(stringBuilder, random);
     return stringBuilder.toString();
   }
 
+  /**
+   * Generates a phrase into the buffer, replacing whatever was in it, and returns the buffer. A thread generating lots
+   * of phrases can keep reusing the one buffer rather than creating a builder and a string for each.
+   */
+  public StringBuilder generatePhrase(StringBuilder buffer, SplittableRandom random) {
+    buffer.setLength(0);
+    renderPhrase(buffer, random);
+    return buffer;
+  }
+
   public int size() {
     return phrases.size();
   }
@@ -44,8 +62,8 @@ public class PhraseBank implements PhraseToken {
   }
 
   @Override
-  public void renderPhrase(StringBuilder stringBuilder) {
-    phrases.get(RANDOM.nextInt(phrases.size())).renderPhrase(stringBuilder);
+  public void renderPhrase(StringBuilder stringBuilder, SplittableRandom random) {
+    phrases.get(random.nextInt(phrases.size())).renderPhrase(stringBuilder, random);
   }
 
 }
@@ -1,7 +1,20 @@
 package org.codebrothers.speechengine.phrasepack.token;
 
+import java.util.SplittableRandom;
+
 public interface PhraseGenerator {
 
-  void renderPhrase(StringBuilder stringBuilder);
+  /**
+   * Renders a phrase, making any random choices with the calling thread's own random, so threads never contend.
+   */
+  default void renderPhrase(StringBuilder stringBuilder) {
+    renderPhrase(stringBuilder, ThreadRandoms.current());
+  }
+
+  /**
+   * Renders a phrase, making any random choices with the given random. A SplittableRandom isn't thread safe, give
+   * each thread its own, e.g. split from a common one.
+   */
+  void renderPhrase(StringBuilder stringBuilder, SplittableRandom random);
 
 }
@@ -0,0 +1,29 @@
+package org.codebrothers.speechengine.phrasepack.token;
+
+import java.util.SplittableRandom;
+
+/**
+ * A SplittableRandom for each thread, split from a common root so the threads' streams are independent of one
+ * another. Unlike a shared java.util.Random, there's no seed for the threads to fight over once each has its own.
+ */
+final class ThreadRandoms {
+
+  private static final SplittableRandom ROOT = new SplittableRandom();
+
+  private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(ThreadRandoms::split);
+
+  private ThreadRandoms() {
+  }
+
+  static SplittableRandom current() {
+    return RANDOM.get();
+  }
+
+  /*
+   * The root is only touched once per thread, but SplittableRandom isn't thread safe.
+   */
+  private static synchronized SplittableRandom split() {
+    return ROOT.split();
+  }
+
+}
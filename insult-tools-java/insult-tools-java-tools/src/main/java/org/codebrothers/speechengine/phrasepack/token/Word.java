@@ -1,5 +1,7 @@
 package org.codebrothers.speechengine.phrasepack.token;
 
+import java.util.SplittableRandom;
+
 public class Word implements PhraseToken {
 
   private final String word;
@@ -13,7 +15,7 @@ public class Word implements PhraseToken {
   }
 
   @Override
-  public void renderPhrase(StringBuilder stringBuilder) {
+  public void renderPhrase(StringBuilder stringBuilder, SplittableRandom random) {
     if (stringBuilder.length() > 0) {
       stringBuilder.append(" ");
     }
@@ -0,0 +1,25 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the image as it is, byte for byte.
+ */
+public class BinaryRomWriter extends ChannelRomWriter {
+
+  public BinaryRomWriter(WritableByteChannel channel) {
+    super(channel);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    put(data, offset, length);
+  }
+
+}
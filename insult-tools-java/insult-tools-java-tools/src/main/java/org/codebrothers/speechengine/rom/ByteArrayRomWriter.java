@@ -0,0 +1,52 @@
+package org.codebrothers.speechengine.rom;
+
+import java.text.MessageFormat;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects an image of a known size into a single array, which is handed over as it is rather than copied.
+ */
+public class ByteArrayRomWriter implements RomWriter {
+
+  private final byte[] bytes;
+  private int length;
+
+  public ByteArrayRomWriter(int size) {
+    bytes = new byte[size];
+  }
+
+  @Override
+  public void write(int b) {
+    checkSpace(1);
+    bytes[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) {
+    checkSpace(length);
+    System.arraycopy(data, offset, bytes, this.length, length);
+    this.length += length;
+  }
+
+  /**
+   * The image, which must have been written in full.
+   */
+  public byte[] toByteArray() {
+    Preconditions.checkState(length == bytes.length, MessageFormat
+            .format("Expected {0,number,#} bytes of ROM but only {1,number,#} were written.", bytes.length, length));
+    return bytes;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private void checkSpace(int count) {
+    if (count > bytes.length - length) {
+      throw new IllegalStateException(
+              MessageFormat.format("ROM is larger than the expected {0,number,#} bytes.", bytes.length));
+    }
+  }
+
+}
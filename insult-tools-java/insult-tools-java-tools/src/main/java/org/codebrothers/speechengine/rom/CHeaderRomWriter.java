@@ -0,0 +1,114 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes the image as a C header for the AVR, declaring a single byte array in PROGMEM:
+ *
+ * <pre>
+ * const uint8_t name[] PROGMEM = {
+ *   // comment
+ *   0x01, 0x02, ...
+ * };
+ * </pre>
+ *
+ * Comments go in on a line of their own, ahead of the byte they were given for.
+ */
+public class CHeaderRomWriter extends ChannelRomWriter {
+
+  private static final int BYTES_PER_LINE = 16;
+
+  /*
+   * The C literal for each byte value, so bytes are never formatted one at a time.
+   */
+  private static final byte[][] LITERALS = new byte[256][];
+
+  static {
+    for (int b = 0; b < LITERALS.length; b++) {
+      LITERALS[b] = String.format("0x%02X,", b).getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  // bytes on the current line
+  private int column;
+
+  public CHeaderRomWriter(WritableByteChannel channel, String name) throws IOException {
+    super(channel);
+    Preconditions.checkArgument(isIdentifier(name), MessageFormat.format("\"{0}\" is not a C identifier.", name));
+
+    String guard = name.toUpperCase() + "_H";
+    put("#ifndef " + guard + "\n");
+    put("#define " + guard + "\n\n");
+    put("#include <stdint.h>\n");
+    put("#include <avr/pgmspace.h>\n\n");
+    put("const uint8_t " + name + "[] PROGMEM = {\n");
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    // two spaces of indent to start a line, otherwise one after the last comma
+    put((byte) ' ');
+    if (column == 0) {
+      put((byte) ' ');
+    }
+    put(LITERALS[b & 0xFF]);
+    if (++column == BYTES_PER_LINE) {
+      endLine();
+    }
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    for (int i = offset; i < offset + length; i++) {
+      write(data[i]);
+    }
+  }
+
+  @Override
+  public void comment(Object comment) throws IOException {
+    if (column > 0) {
+      endLine();
+    }
+    // a comment runs to the end of the line, so it had better be just the one
+    put("  // " + String.valueOf(comment).replace('\n', ' ').replace('\r', ' ') + "\n");
+  }
+
+  @Override
+  protected void finish() throws IOException {
+    if (column > 0) {
+      endLine();
+    }
+    put("};\n\n");
+    put("#endif\n");
+  }
+
+  private void endLine() throws IOException {
+    put((byte) '\n');
+    column = 0;
+  }
+
+  /**
+   * Turns a file name into a C identifier, anything other than a letter, digit or underscore becomes an underscore.
+   */
+  public static String identifier(String fileName) {
+    StringBuilder builder = new StringBuilder(fileName.length() + 1);
+    if (fileName.isEmpty() || Character.isDigit(fileName.charAt(0))) {
+      builder.append('_');
+    }
+    for (int i = 0; i < fileName.length(); i++) {
+      char c = fileName.charAt(i);
+      builder.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '_') ? c : '_');
+    }
+    return builder.toString();
+  }
+
+  private static boolean isIdentifier(String name) {
+    return !name.isEmpty() && identifier(name).equals(name);
+  }
+
+}
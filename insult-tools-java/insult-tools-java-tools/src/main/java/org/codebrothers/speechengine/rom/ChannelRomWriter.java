@@ -0,0 +1,108 @@
+package org.codebrothers.speechengine.rom;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Base for writers that stream to a channel, through a small buffer that is reused for the whole image.
+ *
+ * The writer owns the channel and closes it.
+ */
+public abstract class ChannelRomWriter implements RomWriter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private boolean closed;
+
+  protected ChannelRomWriter(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  static FileChannel open(Path path) throws IOException {
+    return FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+  }
+
+  protected final void put(byte b) throws IOException {
+    if (!buffer.hasRemaining()) {
+      drain();
+    }
+    buffer.put(b);
+  }
+
+  protected final void put(byte[] bytes, int offset, int length) throws IOException {
+    if (length > buffer.remaining()) {
+      drain();
+      // too big to be worth copying, hand it straight to the channel
+      if (length > buffer.capacity()) {
+        writeFully(ByteBuffer.wrap(bytes, offset, length));
+        return;
+      }
+    }
+    buffer.put(bytes, offset, length);
+  }
+
+  protected final void put(byte[] bytes) throws IOException {
+    put(bytes, 0, bytes.length);
+  }
+
+  protected final void put(String text) throws IOException {
+    put(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Called once on close, before the last of the buffer is written, to output anything that follows the image.
+   */
+  protected void finish() throws IOException {
+  }
+
+  @Override
+  public final void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      finish();
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Closes the channel without finishing the image or writing out the rest of the buffer.
+   */
+  @Override
+  public final void abort() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    channel.close();
+  }
+
+  private void drain() throws IOException {
+    // through Buffer, so it also runs on Java 8 when built with a later JDK
+    ((Buffer) buffer).flip();
+    writeFully(buffer);
+    ((Buffer) buffer).clear();
+  }
+
+  private void writeFully(ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+  }
+
+}
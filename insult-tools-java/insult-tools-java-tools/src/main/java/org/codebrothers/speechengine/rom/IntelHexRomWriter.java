@@ -0,0 +1,112 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the image in Intel HEX, the text format most EEPROM programmers take.
+ *
+ * The image goes out as data records of up to 16 bytes. Records never straddle a 64k boundary, past the first 64k an
+ * extended linear address record gives the upper 16 bits of the addresses that follow. The file ends with an end of
+ * file record.
+ */
+public class IntelHexRomWriter extends ChannelRomWriter {
+
+  private static final int RECORD_BYTES = 16;
+
+  private static final int DATA_RECORD = 0x00;
+  private static final int END_OF_FILE_RECORD = 0x01;
+  private static final int EXTENDED_LINEAR_ADDRESS_RECORD = 0x04;
+
+  private static final long MAX_ADDRESS = 0xFFFFFFFFL;
+
+  private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_OF_LINE = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  // bytes waiting to go out as the next data record, and the address of the first of them
+  private final byte[] record = new byte[RECORD_BYTES];
+  private int recordLength;
+  private long address;
+
+  // upper 16 bits of the address, as given by the last extended linear address record
+  private long upperAddress;
+
+  public IntelHexRomWriter(WritableByteChannel channel) {
+    super(channel);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    record[recordLength++] = (byte) b;
+    if (recordLength == RECORD_BYTES || ((address + recordLength) & 0xFFFF) == 0) {
+      outputDataRecord();
+    }
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    while (length > 0) {
+      // fill the record up to its size or the next 64k boundary, whichever comes first
+      int toBoundary = (int) (0x10000 - ((address + recordLength) & 0xFFFF));
+      int count = Math.min(length, Math.min(RECORD_BYTES - recordLength, toBoundary));
+      System.arraycopy(data, offset, record, recordLength, count);
+      recordLength += count;
+      offset += count;
+      length -= count;
+      if (recordLength == RECORD_BYTES || count == toBoundary) {
+        outputDataRecord();
+      }
+    }
+  }
+
+  @Override
+  protected void finish() throws IOException {
+    outputDataRecord();
+    outputRecord(END_OF_FILE_RECORD, 0, record, 0);
+  }
+
+  private void outputDataRecord() throws IOException {
+    if (recordLength == 0) {
+      return;
+    }
+    if (address + recordLength - 1 > MAX_ADDRESS) {
+      throw new IOException("Intel HEX can only address 4GB.");
+    }
+
+    long upper = address >>> 16;
+    if (upper != upperAddress) {
+      byte[] segment = { (byte) (upper >> 8), (byte) upper };
+      outputRecord(EXTENDED_LINEAR_ADDRESS_RECORD, 0, segment, segment.length);
+      upperAddress = upper;
+    }
+
+    outputRecord(DATA_RECORD, (int) (address & 0xFFFF), record, recordLength);
+    address += recordLength;
+    recordLength = 0;
+  }
+
+  /*
+   * :LLAAAATT[DD...]CC where the checksum is the two's complement of the sum of all the other bytes.
+   */
+  private void outputRecord(int type, int recordAddress, byte[] data, int length) throws IOException {
+    put((byte) ':');
+    int sum = length + (recordAddress >> 8) + recordAddress + type;
+    outputHex(length);
+    outputHex(recordAddress >> 8);
+    outputHex(recordAddress);
+    outputHex(type);
+    for (int i = 0; i < length; i++) {
+      outputHex(data[i]);
+      sum += data[i];
+    }
+    outputHex(-sum);
+    put(END_OF_LINE);
+  }
+
+  private void outputHex(int b) throws IOException {
+    put(HEX_DIGITS[(b >> 4) & 0xF]);
+    put(HEX_DIGITS[b & 0xF]);
+  }
+
+}
@@ -0,0 +1,68 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.codebrothers.speechengine.util.AtomicFileUtils;
+
+/**
+ * Writes an image to a temporary file next to its file, and moves it into place once the image is whole. A build that
+ * fails part way, and is aborted, leaves the previous image as it was.
+ */
+final class ReplacingRomWriter implements RomWriter {
+
+  private final RomWriter romWriter;
+  private final Path tempPath;
+  private final Path path;
+  private boolean closed;
+
+  ReplacingRomWriter(RomWriter romWriter, Path tempPath, Path path) {
+    this.romWriter = romWriter;
+    this.tempPath = tempPath;
+    this.path = path;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    romWriter.write(b);
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    romWriter.write(data, offset, length);
+  }
+
+  @Override
+  public void comment(Object comment) throws IOException {
+    romWriter.comment(comment);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      romWriter.close();
+      AtomicFileUtils.moveIntoPlace(tempPath, path);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  @Override
+  public void abort() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      romWriter.abort();
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+
+import org.codebrothers.speechengine.util.AtomicFileUtils;
+import org.codebrothers.speechengine.util.FilenameUtils;
+
+/**
+ * The formats a ROM image can be written in, each picked by its file extension.
+ */
+public enum RomFormat {
+
+  BINARY("bin") {
+    @Override
+    public RomWriter writer(WritableByteChannel channel, String name) {
+      return new BinaryRomWriter(channel);
+    }
+  },
+
+  INTEL_HEX("hex") {
+    @Override
+    public RomWriter writer(WritableByteChannel channel, String name) {
+      return new IntelHexRomWriter(channel);
+    }
+  },
+
+  C_HEADER("h") {
+    @Override
+    public RomWriter writer(WritableByteChannel channel, String name) throws IOException {
+      return new CHeaderRomWriter(channel, CHeaderRomWriter.identifier(name));
+    }
+  };
+
+  /**
+   * Outputs an image to a writer, see {@link RomFormat#write(Path, ImageOutput)}.
+   */
+  @FunctionalInterface
+  public interface ImageOutput {
+
+    void output(RomWriter romWriter) throws IOException;
+
+  }
+
+  private final String extension;
+
+  private RomFormat(String extension) {
+    this.extension = extension;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  /**
+   * A writer for an image in this format. The name is only used by formats that label the image, e.g. as the C array
+   * name.
+   */
+  public abstract RomWriter writer(WritableByteChannel channel, String name) throws IOException;
+
+  /**
+   * Returns a writer for the file, named after it. The image is written to a temporary file alongside, which only
+   * replaces the file once the writer is closed. Abort the writer if anything fails and the file is left as it was, see
+   * {@link #write(Path, ImageOutput)}.
+   */
+  public RomWriter open(Path path) throws IOException {
+    Path tempPath = AtomicFileUtils.createTempFile(path);
+    try {
+      FileChannel channel = ChannelRomWriter.open(tempPath);
+      try {
+        return new ReplacingRomWriter(writer(channel, FilenameUtils.fileNameWithoutExtension(path)), tempPath, path);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tempPath);
+      throw e;
+    }
+  }
+
+  /**
+   * Writes an image to the file in the format for its extension. The file is only replaced once the whole image has
+   * been output, if the output fails the writer is aborted and the file is left as it was.
+   */
+  public static void write(Path path, ImageOutput imageOutput) throws IOException {
+    RomWriter romWriter = forPath(path).open(path);
+    try {
+      imageOutput.output(romWriter);
+    } catch (IOException | RuntimeException e) {
+      try {
+        romWriter.abort();
+      } catch (IOException abortException) {
+        e.addSuppressed(abortException);
+      }
+      throw e;
+    }
+    romWriter.close();
+  }
+
+  /**
+   * The format for a file, from its extension.
+   */
+  public static RomFormat forPath(Path path) {
+    String fileName = FilenameUtils.fileName(path);
+    String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+    for (RomFormat format : values()) {
+      if (fileName.contains(".") && format.extension.equalsIgnoreCase(extension)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException(
+            MessageFormat.format("Can''t tell the ROM format of \"{0}\", expected a .bin, .hex or .h file.", path));
+  }
+
+}
@@ -0,0 +1,41 @@
+package org.codebrothers.speechengine.rom;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes out a ROM image in some format, e.g. raw binary or Intel HEX.
+ *
+ * The image is passed in a piece at a time, in address order, so a writer never needs to hold the whole image and a
+ * ROM can be streamed straight to disk as it is laid out. The first byte written is at address zero.
+ */
+public interface RomWriter extends Closeable {
+
+  void write(int b) throws IOException;
+
+  void write(byte[] data, int offset, int length) throws IOException;
+
+  default void write(byte[] data) throws IOException {
+    write(data, 0, data.length);
+  }
+
+  /**
+   * Notes what starts at the next byte written, using toString. Formats without comments ignore it.
+   */
+  default void comment(Object comment) throws IOException {
+  }
+
+  /**
+   * Finishes the image, e.g. with an end of file record, and closes whatever it was written to.
+   */
+  @Override
+  void close() throws IOException;
+
+  /**
+   * Closes the writer after a failure, instead of {@link #close()}. Nothing more is output, so the image is never
+   * finished off as if it were whole. Writers to a file leave the file as it was before the writer was opened.
+   */
+  default void abort() throws IOException {
+  }
+
+}
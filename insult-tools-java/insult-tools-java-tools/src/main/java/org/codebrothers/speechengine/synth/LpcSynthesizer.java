@@ -0,0 +1,32 @@
+package org.codebrothers.speechengine.synth;
+
+import v9t9.engine.speech.LPCParameters;
+
+/**
+ * Turns decoded LPC frames (see {@link TalkieFrameReader}) back into sound, a frame at a time.
+ *
+ * A synthesizer carries its filter state from one frame to the next, so isn't thread safe, each thread needs its own.
+ */
+public interface LpcSynthesizer {
+
+  /**
+   * Samples per second, as played by Talkie and the chip.
+   */
+  int SAMPLE_RATE = 8000;
+
+  /**
+   * Samples per frame, a frame lasting 25ms.
+   */
+  int FRAME_SAMPLES = 200;
+
+  /**
+   * Synthesizes a frame of 16-bit samples into the array at the given offset, always {@link #FRAME_SAMPLES} of them.
+   */
+  void synthesize(LPCParameters frame, short[] samples, int offset);
+
+  /**
+   * Back to silence, ready to start afresh.
+   */
+  void reset();
+
+}
@@ -0,0 +1,227 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.codebrothers.speechengine.wordbank.WordBank;
+
+import v9t9.engine.speech.LPCParameters;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Renders a phrase, e.g. one generated from a phrase bank, to PCM by decoding each of its words from the word bank.
+ *
+ * Nothing is decoded ahead of being asked for: a {@link PcmStream} decodes a frame (25ms) at a time as it is read, so
+ * the first samples are ready as soon as the first frame is, however long the phrase. The words run straight into one
+ * another, as they would played back to back from the ROM.
+ *
+ * Samples are 16-bit signed, mono at {@link LpcSynthesizer#SAMPLE_RATE}.
+ */
+public class PhrasePcmRenderer {
+
+  /**
+   * The format of {@link #openAudioStream(List)}, 16-bit signed little endian mono.
+   */
+  public static final AudioFormat AUDIO_FORMAT = new AudioFormat(LpcSynthesizer.SAMPLE_RATE, 16, 1, true, false);
+
+  private final WordBank wordBank;
+  private final Supplier<LpcSynthesizer> synthesizerSupplier;
+
+  public PhrasePcmRenderer(WordBank wordBank) {
+    this(wordBank, TalkieSynthesizer::new);
+  }
+
+  /**
+   * Each stream opened gets its own synthesizer from the supplier.
+   */
+  public PhrasePcmRenderer(WordBank wordBank, Supplier<LpcSynthesizer> synthesizerSupplier) {
+    this.wordBank = wordBank;
+    this.synthesizerSupplier = synthesizerSupplier;
+  }
+
+  /**
+   * Opens a stream of the phrase's samples. Every word must be in the word bank.
+   */
+  public PcmStream open(List<String> words) {
+    byte[][] encodedWords = new byte[words.size()][];
+    for (int i = 0; i < encodedWords.length; i++) {
+      encodedWords[i] = wordBank.get(words.get(i));
+      Preconditions.checkState(encodedWords[i] != null,
+              MessageFormat.format("Word \"{0}\" was not found in word bank.", words.get(i)));
+    }
+    return new PcmStream(encodedWords, synthesizerSupplier.get());
+  }
+
+  /**
+   * Opens a stream of the phrase as text, its words separated by spaces, e.g. from
+   * {@link org.codebrothers.speechengine.phrasepack.token.PhraseBank#generatePhrase()}.
+   */
+  public PcmStream open(String phrase) {
+    return open(Arrays.asList(phrase.trim().split(" +")));
+  }
+
+  /**
+   * Renders the whole phrase, handing the samples over a frame at a time as each is decoded.
+   */
+  public void render(List<String> words, PcmConsumer pcmConsumer) throws IOException {
+    PcmStream pcmStream = open(words);
+    short[] samples = new short[LpcSynthesizer.FRAME_SAMPLES];
+    int count;
+    while ((count = pcmStream.read(samples, 0, samples.length)) > 0) {
+      pcmConsumer.accept(samples, 0, count);
+    }
+  }
+
+  /**
+   * Renders the whole phrase into one array, for when it's all needed at once, e.g. to write to a file.
+   */
+  public short[] render(List<String> words) {
+    PcmStream pcmStream = open(words);
+    short[] samples = new short[LpcSynthesizer.FRAME_SAMPLES * 16];
+    int length = 0;
+    int count;
+    while ((count = pcmStream.read(samples, length, samples.length - length)) >= 0) {
+      length += count;
+      if (length == samples.length) {
+        samples = Arrays.copyOf(samples, length * 2);
+      }
+    }
+    return Arrays.copyOf(samples, length);
+  }
+
+  /**
+   * The phrase as an audio stream in {@link #AUDIO_FORMAT}, to play or write out with javax.sound. Its length isn't
+   * known until the last word is decoded.
+   */
+  public AudioInputStream openAudioStream(List<String> words) {
+    return new AudioInputStream(new PcmInputStream(open(words)), AUDIO_FORMAT, AudioSystem.NOT_SPECIFIED);
+  }
+
+  /**
+   * Takes samples as they are rendered. The array is reused, copy out what's needed.
+   */
+  @FunctionalInterface
+  public interface PcmConsumer {
+
+    void accept(short[] samples, int offset, int length) throws IOException;
+
+  }
+
+  /**
+   * The samples of a phrase, each frame decoded only when the samples before it have all been read. Not thread safe.
+   */
+  public static class PcmStream {
+
+    private final byte[][] encodedWords;
+    private final LpcSynthesizer synthesizer;
+    private final LPCParameters frame = new LPCParameters();
+    private final short[] frameSamples = new short[LpcSynthesizer.FRAME_SAMPLES];
+
+    private int wordIndex = -1;
+    private TalkieFrameReader frameReader;
+    // the samples of the current frame not yet read, none before the first
+    private int position = LpcSynthesizer.FRAME_SAMPLES;
+
+    private PcmStream(byte[][] encodedWords, LpcSynthesizer synthesizer) {
+      this.encodedWords = encodedWords;
+      this.synthesizer = synthesizer;
+    }
+
+    /**
+     * Reads up to length samples, returns how many were read, or -1 at the end of the phrase. Only ever decodes one
+     * more frame than has been read.
+     */
+    public int read(short[] samples, int offset, int length) {
+      int read = 0;
+      while (read < length) {
+        if (position == frameSamples.length && !decodeFrame()) {
+          break;
+        }
+        int count = Math.min(length - read, frameSamples.length - position);
+        System.arraycopy(frameSamples, position, samples, offset + read, count);
+        position += count;
+        read += count;
+      }
+      return read == 0 && length > 0 ? -1 : read;
+    }
+
+    private boolean decodeFrame() {
+      while (frameReader == null || !frameReader.next(frame)) {
+        if (wordIndex + 1 == encodedWords.length) {
+          return false;
+        }
+        frameReader = new TalkieFrameReader(encodedWords[++wordIndex]);
+      }
+      synthesizer.synthesize(frame, frameSamples, 0);
+      position = 0;
+      return true;
+    }
+
+  }
+
+  /*
+   * The samples as little endian bytes, for javax.sound.
+   */
+  private static class PcmInputStream extends InputStream {
+
+    private final PcmStream pcmStream;
+    private final short[] samples = new short[LpcSynthesizer.FRAME_SAMPLES];
+    private final byte[] bytes = new byte[LpcSynthesizer.FRAME_SAMPLES * 2];
+    private int position;
+    private int length;
+
+    public PcmInputStream(PcmStream pcmStream) {
+      this.pcmStream = pcmStream;
+    }
+
+    @Override
+    public int read() {
+      if (!fill()) {
+        return -1;
+      }
+      return bytes[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, length - position);
+      System.arraycopy(bytes, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    private boolean fill() {
+      if (position < length) {
+        return true;
+      }
+      int count = pcmStream.read(samples, 0, samples.length);
+      if (count < 0) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        bytes[i * 2] = (byte) samples[i];
+        bytes[i * 2 + 1] = (byte) (samples[i] >> 8);
+      }
+      position = 0;
+      length = count * 2;
+      return true;
+    }
+
+  }
+
+}
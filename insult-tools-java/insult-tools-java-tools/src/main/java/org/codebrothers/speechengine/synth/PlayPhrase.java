@@ -0,0 +1,69 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import org.codebrothers.speechengine.phrasepack.PhrasePack;
+import org.codebrothers.speechengine.phrasepack.PhrasePackParser;
+import org.codebrothers.speechengine.phrasepack.token.PhraseBank;
+import org.codebrothers.speechengine.wordbank.WordBank;
+import org.codebrothers.speechengine.wordbank.WordBankProcessor;
+
+import uk.co.labbookpages.WavFileException;
+
+/**
+ * Generates a phrase from the primary bank and says it, as Talkie would, through the speakers or into a WAV file.
+ * Saves flashing the chip to hear how a phrase pack sounds.
+ */
+public class PlayPhrase {
+
+  public static void main(String[] args)
+          throws IOException, WavFileException, LineUnavailableException {
+    if (args.length < 2 || args.length > 3) {
+      System.out.println("Usage: PlayPhrase [word_bank_directory] [phrase_pack_directory] [optional_output.wav]");
+      System.exit(1);
+    }
+
+    PhrasePack phrasePack = new PhrasePackParser().parse(Paths.get(args[1]));
+    WordBank wordBank = new WordBankProcessor().processParallel(Paths.get(args[0]));
+    PhraseBank primaryPhraseBank = phrasePack.getPhraseBanks().get("primary");
+    if (primaryPhraseBank == null) {
+      throw new IllegalStateException("No \"primary\" phrase bank found.");
+    }
+
+    String phrase = primaryPhraseBank.generatePhrase();
+    System.out.println(phrase);
+    PhrasePcmRenderer phrasePcmRenderer = new PhrasePcmRenderer(wordBank);
+
+    if (args.length > 2) {
+      try (AudioInputStream audioInputStream = phrasePcmRenderer.openAudioStream(Arrays.asList(phrase.split(" ")))) {
+        AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE, new File(args[2]));
+      }
+      return;
+    }
+
+    // each frame goes to the speakers as soon as it is decoded
+    try (SourceDataLine line = AudioSystem.getSourceDataLine(PhrasePcmRenderer.AUDIO_FORMAT)) {
+      line.open(PhrasePcmRenderer.AUDIO_FORMAT);
+      line.start();
+      byte[] bytes = new byte[LpcSynthesizer.FRAME_SAMPLES * 2];
+      phrasePcmRenderer.render(Arrays.asList(phrase.split(" ")), (samples, offset, length) -> {
+        for (int i = 0; i < length; i++) {
+          bytes[i * 2] = (byte) samples[offset + i];
+          bytes[i * 2 + 1] = (byte) (samples[offset + i] >> 8);
+        }
+        line.write(bytes, 0, length * 2);
+      });
+      line.drain();
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.codebrothers.speechengine.wordbank.WordBank;
+import org.codebrothers.speechengine.wordbank.WordBankProcessor;
+
+import uk.co.labbookpages.WavFileException;
+
+/**
+ * Encodes a word bank then decodes every word back to a WAV file, so a whole bank can be listened to, or checked, as
+ * the speech chip would say it, without flashing anything. Words are rendered in parallel.
+ */
+public class RenderWords {
+
+  public static void main(String[] args) throws IOException, WavFileException {
+    if (args.length < 2 || args.length > 3) {
+      System.out.println("Usage: RenderWords [word_bank_directory] [output_directory] [optional talkie|tms5220]");
+      System.exit(1);
+    }
+    SynthesizerModel synthesizerModel = args.length > 2 ? SynthesizerModel.forName(args[2]) : SynthesizerModel.TALKIE;
+    Path outputPath = Files.createDirectories(Paths.get(args[1]));
+
+    WordBank wordBank = new WordBankProcessor().processParallel(Paths.get(args[0]));
+    PhrasePcmRenderer phrasePcmRenderer = new PhrasePcmRenderer(wordBank, synthesizerModel);
+
+    long start = System.nanoTime();
+    long samples = wordBank.entrySet().parallelStream().mapToLong(word -> {
+      short[] pcm = phrasePcmRenderer.render(Collections.singletonList(word.getKey()));
+      writeWav(pcm, outputPath.resolve(word.getKey() + ".wav"));
+      return pcm.length;
+    }).sum();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.println(String.format("Rendered %d words, %.1fs of speech in %.2fs with %s", wordBank.size(),
+            (double) samples / LpcSynthesizer.SAMPLE_RATE, seconds, synthesizerModel));
+  }
+
+  private static void writeWav(short[] pcm, Path path) {
+    byte[] bytes = new byte[pcm.length * 2];
+    for (int i = 0; i < pcm.length; i++) {
+      bytes[i * 2] = (byte) pcm[i];
+      bytes[i * 2 + 1] = (byte) (pcm[i] >> 8);
+    }
+    try (AudioInputStream audioInputStream = new AudioInputStream(new ByteArrayInputStream(bytes),
+            PhrasePcmRenderer.AUDIO_FORMAT, pcm.length)) {
+      AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE, path.toFile());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,306 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.codebrothers.speechengine.TalkieSpeechEncoder;
+import org.codebrothers.speechengine.util.FilenameUtils;
+import org.codebrothers.speechengine.util.PathPreconditions;
+import org.codebrothers.speechengine.wordbank.WordBankProcessor;
+
+import uk.co.labbookpages.MappedWavFile;
+import uk.co.labbookpages.WavFileException;
+import v9t9.common.speech.ILPCParameters;
+import v9t9.engine.speech.LPCParameters;
+import v9t9.engine.speech.encode.LPCSpeechAnalyzer;
+
+/**
+ * Encodes every word of a word bank, decodes it again and measures how far the decoded speech is from the recording,
+ * so what an encoder setting costs in quality can be seen word by word.
+ *
+ * For each word it reports, as CSV:
+ *
+ * <ul>
+ * <li>frames: the number of 25ms frames decoded.</li>
+ * <li>encoded_bytes: the size of the Talkie data.</li>
+ * <li>analysis_ms: the time to analyze the recording and quantize each frame's parameters.</li>
+ * <li>packing_ms: the time to pack the quantized frames into the Talkie bit stream.</li>
+ * <li>spectral_distortion_db: the RMS difference between the log power spectra of the recording and the decoded speech,
+ * averaged over the frames with speech in them.</li>
+ * <li>segmental_snr_db: the signal to noise ratio of the decoded speech against the recording, frame by frame, each
+ * frame limited to -10 to 35 dB and averaged over the frames with speech in them.</li>
+ * </ul>
+ *
+ * The encoder keeps the spectral envelope and the pitch but not the waveform, so the segmental SNR is low for any
+ * setting, it's most use comparing one setting with another.
+ *
+ * Words are measured in parallel, so the times are those of a busy machine. The first few words also include the JIT
+ * warming up.
+ */
+public class RoundTripReport {
+
+  public static final String CSV_HEADER =
+          "word,frames,encoded_bytes,analysis_ms,packing_ms,spectral_distortion_db,segmental_snr_db";
+
+  /*
+   * Frames quieter than this mean square, about -50 dBFS, count as silence.
+   */
+  private static final double SILENCE = 1e-5;
+
+  private static final double MIN_SEGMENT_SNR = -10;
+  private static final double MAX_SEGMENT_SNR = 35;
+
+  /*
+   * Power spectra are worked out over 256 points, frames zero padded, with this floor so silence doesn't take a log of
+   * zero.
+   */
+  private static final int SPECTRUM_POINTS = 256;
+  private static final int SPECTRUM_BINS = SPECTRUM_POINTS / 2 + 1;
+  private static final double POWER_FLOOR = 1e-10;
+
+  private static final double[] WINDOW = new double[LpcSynthesizer.FRAME_SAMPLES];
+  private static final double[] COSINES = new double[SPECTRUM_POINTS];
+  private static final double[] SINES = new double[SPECTRUM_POINTS];
+
+  static {
+    for (int i = 0; i < WINDOW.length; i++) {
+      WINDOW[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (WINDOW.length - 1));
+    }
+    for (int i = 0; i < SPECTRUM_POINTS; i++) {
+      COSINES[i] = Math.cos(2 * Math.PI * i / SPECTRUM_POINTS);
+      SINES[i] = Math.sin(2 * Math.PI * i / SPECTRUM_POINTS);
+    }
+  }
+
+  private final LPCSpeechAnalyzer lpcSpeechAnalyzer;
+  private final TalkieSpeechEncoder talkieSpeechEncoder;
+  private final SynthesizerModel synthesizerModel;
+
+  public RoundTripReport(SynthesizerModel synthesizerModel) {
+    this(new LPCSpeechAnalyzer(), new TalkieSpeechEncoder(), synthesizerModel);
+  }
+
+  public RoundTripReport(LPCSpeechAnalyzer lpcSpeechAnalyzer, TalkieSpeechEncoder talkieSpeechEncoder,
+          SynthesizerModel synthesizerModel) {
+    this.lpcSpeechAnalyzer = lpcSpeechAnalyzer;
+    this.talkieSpeechEncoder = talkieSpeechEncoder;
+    this.synthesizerModel = synthesizerModel;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("Usage: RoundTripReport [word_bank_directory] [optional talkie|tms5220]");
+      System.exit(1);
+    }
+    SynthesizerModel synthesizerModel = args.length > 1 ? SynthesizerModel.forName(args[1]) : SynthesizerModel.TALKIE;
+    Path wordBankPath = Paths.get(args[0]);
+    PathPreconditions.checkReadableDirectory(wordBankPath);
+
+    RoundTripReport roundTripReport = new RoundTripReport(synthesizerModel);
+    System.out.println(CSV_HEADER);
+    for (WordResult wordResult : roundTripReport.measure(WordBankProcessor.wavFiles(wordBankPath))) {
+      System.out.println(wordResult.toCsv());
+    }
+  }
+
+  /**
+   * Measures each of the WAV files in parallel, the results are in the same order as the files.
+   */
+  public List<WordResult> measure(List<Path> wavFiles) {
+    return wavFiles.parallelStream().map(path -> {
+      try {
+        return measure(path);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (WavFileException e) {
+        throw new IllegalStateException(e);
+      }
+    }).collect(Collectors.toList());
+  }
+
+  public WordResult measure(Path wavFile) throws IOException, WavFileException {
+    long start = System.nanoTime();
+    List<ILPCParameters> analyzedFrames = lpcSpeechAnalyzer.analyze(wavFile);
+    long analyzed = System.nanoTime();
+    byte[] encoded = talkieSpeechEncoder.encode(analyzedFrames);
+    long packed = System.nanoTime();
+
+    float[] decoded = decode(encoded);
+    float[] recording = readRecording(wavFile);
+
+    int frames = decoded.length / LpcSynthesizer.FRAME_SAMPLES;
+    double[] recordingSpectrum = new double[SPECTRUM_BINS];
+    double[] decodedSpectrum = new double[SPECTRUM_BINS];
+    double spectralDistortion = 0;
+    double segmentalSnr = 0;
+    int speechFrames = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      int offset = frame * LpcSynthesizer.FRAME_SAMPLES;
+      double signal = 0;
+      double noise = 0;
+      for (int i = offset; i < offset + LpcSynthesizer.FRAME_SAMPLES; i++) {
+        double sample = i < recording.length ? recording[i] : 0;
+        signal += sample * sample;
+        noise += (sample - decoded[i]) * (sample - decoded[i]);
+      }
+      if (signal / LpcSynthesizer.FRAME_SAMPLES < SILENCE) {
+        continue;
+      }
+      double snr = noise == 0 ? MAX_SEGMENT_SNR : 10 * Math.log10(signal / noise);
+      segmentalSnr += Math.max(MIN_SEGMENT_SNR, Math.min(MAX_SEGMENT_SNR, snr));
+
+      powerSpectrum(recording, offset, recordingSpectrum);
+      powerSpectrum(decoded, offset, decodedSpectrum);
+      double sum = 0;
+      for (int bin = 0; bin < SPECTRUM_BINS; bin++) {
+        double difference = 10 * Math.log10(recordingSpectrum[bin] / decodedSpectrum[bin]);
+        sum += difference * difference;
+      }
+      spectralDistortion += Math.sqrt(sum / SPECTRUM_BINS);
+      speechFrames++;
+    }
+
+    return new WordResult(FilenameUtils.fileNameWithoutExtension(wavFile), frames, encoded.length, analyzed - start,
+            packed - analyzed, speechFrames > 0 ? spectralDistortion / speechFrames : Double.NaN,
+            speechFrames > 0 ? segmentalSnr / speechFrames : Double.NaN);
+  }
+
+  /*
+   * Decodes the Talkie data as the renderer would, scaled to the same -1 to 1 range as the recording.
+   */
+  private float[] decode(byte[] encoded) {
+    TalkieFrameReader frameReader = new TalkieFrameReader(encoded);
+    LpcSynthesizer synthesizer = synthesizerModel.get();
+    LPCParameters frame = new LPCParameters();
+    short[] frameSamples = new short[LpcSynthesizer.FRAME_SAMPLES];
+    float[] decoded = new float[LpcSynthesizer.FRAME_SAMPLES * 16];
+    int length = 0;
+    while (frameReader.next(frame)) {
+      synthesizer.synthesize(frame, frameSamples, 0);
+      if (length == decoded.length) {
+        decoded = Arrays.copyOf(decoded, length * 2);
+      }
+      for (int i = 0; i < frameSamples.length; i++) {
+        decoded[length + i] = frameSamples[i] / 32768f;
+      }
+      length += frameSamples.length;
+    }
+    return Arrays.copyOf(decoded, length);
+  }
+
+  /*
+   * The recording mixed down to mono and, if it wasn't recorded at the playback rate, linearly resampled to it.
+   */
+  private static float[] readRecording(Path wavFile) throws IOException, WavFileException {
+    try (MappedWavFile wavFileReader = MappedWavFile.openWavFile(wavFile)) {
+      float[] samples = new float[(int) wavFileReader.getNumFrames()];
+      wavFileReader.readFrames(samples, samples.length, MappedWavFile.DOWNMIX);
+      long sampleRate = wavFileReader.getSampleRate();
+      if (sampleRate == LpcSynthesizer.SAMPLE_RATE || samples.length == 0) {
+        return samples;
+      }
+      float[] resampled = new float[(int) (samples.length * LpcSynthesizer.SAMPLE_RATE / sampleRate)];
+      for (int i = 0; i < resampled.length; i++) {
+        double position = (double) i * sampleRate / LpcSynthesizer.SAMPLE_RATE;
+        int index = Math.min((int) position, samples.length - 1);
+        int next = Math.min(index + 1, samples.length - 1);
+        double fraction = position - index;
+        resampled[i] = (float) (samples[index] * (1 - fraction) + samples[next] * fraction);
+      }
+      return resampled;
+    }
+  }
+
+  /*
+   * The power spectrum of one frame, windowed. A frame only has a couple of hundred samples, so a plain DFT is quick
+   * enough.
+   */
+  private static void powerSpectrum(float[] samples, int offset, double[] spectrum) {
+    for (int bin = 0; bin < SPECTRUM_BINS; bin++) {
+      double real = 0;
+      double imaginary = 0;
+      for (int i = 0; i < WINDOW.length && offset + i < samples.length; i++) {
+        double sample = samples[offset + i] * WINDOW[i];
+        int angle = (bin * i) % SPECTRUM_POINTS;
+        real += sample * COSINES[angle];
+        imaginary -= sample * SINES[angle];
+      }
+      spectrum[bin] = Math.max(real * real + imaginary * imaginary, POWER_FLOOR);
+    }
+  }
+
+  /**
+   * The measurements for one word.
+   */
+  public static class WordResult {
+
+    private final String word;
+    private final int frames;
+    private final int encodedBytes;
+    private final long analysisNanos;
+    private final long packingNanos;
+    private final double spectralDistortion;
+    private final double segmentalSnr;
+
+    public WordResult(String word, int frames, int encodedBytes, long analysisNanos, long packingNanos,
+            double spectralDistortion, double segmentalSnr) {
+      this.word = word;
+      this.frames = frames;
+      this.encodedBytes = encodedBytes;
+      this.analysisNanos = analysisNanos;
+      this.packingNanos = packingNanos;
+      this.spectralDistortion = spectralDistortion;
+      this.segmentalSnr = segmentalSnr;
+    }
+
+    public String getWord() {
+      return word;
+    }
+
+    public int getFrames() {
+      return frames;
+    }
+
+    public int getEncodedBytes() {
+      return encodedBytes;
+    }
+
+    public long getAnalysisNanos() {
+      return analysisNanos;
+    }
+
+    public long getPackingNanos() {
+      return packingNanos;
+    }
+
+    /**
+     * In dB, NaN if the recording is silent throughout.
+     */
+    public double getSpectralDistortion() {
+      return spectralDistortion;
+    }
+
+    /**
+     * In dB, NaN if the recording is silent throughout.
+     */
+    public double getSegmentalSnr() {
+      return segmentalSnr;
+    }
+
+    /**
+     * A row under {@link RoundTripReport#CSV_HEADER}.
+     */
+    public String toCsv() {
+      return String.format(Locale.ROOT, "%s,%d,%d,%.3f,%.3f,%.2f,%.2f", word, frames, encodedBytes,
+              analysisNanos / 1e6, packingNanos / 1e6, spectralDistortion, segmentalSnr);
+    }
+
+  }
+
+}
@@ -0,0 +1,44 @@
+package org.codebrothers.speechengine.synth;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The synthesizers to choose between, e.g. on the command line.
+ */
+public enum SynthesizerModel implements Supplier<LpcSynthesizer> {
+
+  /**
+   * As played by Talkie on the AVR, see {@link TalkieSynthesizer}.
+   */
+  TALKIE {
+    @Override
+    public LpcSynthesizer get() {
+      return new TalkieSynthesizer();
+    }
+  },
+
+  /**
+   * As spoken by the chip, interpolating between frames, see {@link Tms5220Synthesizer}.
+   */
+  TMS5220 {
+    @Override
+    public LpcSynthesizer get() {
+      return new Tms5220Synthesizer();
+    }
+  };
+
+  /**
+   * The model with the given name, in any case.
+   */
+  public static SynthesizerModel forName(String name) {
+    try {
+      return valueOf(name.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(MessageFormat.format("\"{0}\" is not a synthesizer, expected one of {1}.",
+              name, Arrays.toString(values()).toLowerCase()));
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package org.codebrothers.speechengine.synth;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import v9t9.engine.speech.LPCParameters;
+import v9t9.engine.speech.RomTables;
+import ejs.base.utils.BitInputStream;
+
+/**
+ * Reads the frames of a word back out of its Talkie encoding, as {@link LPCParameters} with both the coded parameters
+ * and their values from {@link RomTables} filled in.
+ *
+ * Talkie reads each byte from the low bit up, so the bytes are reversed back before the frames are read (see
+ * TalkieSpeechEncoder). A repeated frame gets the reflection coefficients of the frame before it, and an unvoiced frame
+ * has K5 to K10 zeroed, as on the chip, so a frame can be synthesized on its own.
+ *
+ * Reading stops at the stop frame, or the end of the data if there isn't one.
+ */
+public class TalkieFrameReader {
+
+  // unvoiced frames only carry the first 4 reflection coefficients
+  private static final int UNVOICED_K_COUNT = 4;
+
+  private final BitInputStream bitInputStream;
+  private final int[] previousKParams = new int[10];
+  private boolean finished;
+
+  public TalkieFrameReader(byte[] talkieBytes) {
+    // a spare byte on the end, BitInputStream reads a byte ahead when a frame ends on a byte boundary
+    byte[] bytes = new byte[talkieBytes.length + 1];
+    for (int i = 0; i < talkieBytes.length; i++) {
+      bytes[i] = (byte) (Integer.reverse(talkieBytes[i]) >>> 24);
+    }
+    bitInputStream = new BitInputStream(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * Reads the next frame into the given parameters, returns false, leaving them alone, once the stop frame is reached.
+   */
+  public boolean next(LPCParameters frame) {
+    if (finished) {
+      return false;
+    }
+    try {
+      frame.fromBytes(bitInputStream);
+    } catch (EOFException e) {
+      finished = true;
+      return false;
+    } catch (IOException e) {
+      // only ever reading from an array
+      throw new UncheckedIOException(e);
+    }
+    if (frame.isLast()) {
+      finished = true;
+      return false;
+    }
+
+    if (frame.isRepeat()) {
+      System.arraycopy(previousKParams, 0, frame.kParam, 0, previousKParams.length);
+    } else if (!frame.isSilent()) {
+      System.arraycopy(frame.kParam, 0, previousKParams, 0, previousKParams.length);
+    }
+
+    frame.energy = RomTables.energytable[frame.energyParam];
+    frame.pitch = RomTables.pitchtable[frame.pitchParam];
+    int kCount = frame.isSilent() ? 0 : frame.isUnvoiced() ? UNVOICED_K_COUNT : frame.kVal.length;
+    for (int k = 0; k < frame.kVal.length; k++) {
+      frame.kVal[k] = k < kCount ? RomTables.ktable[k][frame.kParam[k]] : 0;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,138 @@
+package org.codebrothers.speechengine.synth;
+
+import java.util.Arrays;
+
+import v9t9.engine.speech.LPCParameters;
+import v9t9.engine.speech.RomTables;
+
+/**
+ * Synthesizes speech the way the Talkie library plays it on the AVR, so what is heard is what the hardware will say.
+ *
+ * Talkie loads only the parameters a frame carries, with no interpolation between frames. A silent frame sets just
+ * the energy, keeping the pitch and filter. A repeated frame sets the energy and pitch. An unvoiced frame sets K1 to
+ * K4, keeping K5 to K10 from the last voiced frame. Then for each sample:
+ *
+ * <ul>
+ * <li>Voiced frames are excited by the chirp, restarting every pitch period. Unvoiced frames are excited by a 16-bit
+ * LFSR, plus or minus the energy.</li>
+ * <li>The excitation is run through a 10 stage lattice filter, K1 and K2 as 15-bit fractions, the rest as 7-bit.</li>
+ * <li>The output is clipped to 10 bits, and the clipped value is what goes back into the filter's delays.</li>
+ * </ul>
+ *
+ * Talkie's pitch and K tables are the chip's, cut down to 8 bits where it can get away with it, so they're taken from
+ * {@link RomTables} here and cut down the same way. Its energy table isn't a straight cut down of the chip's, most
+ * values differ by one or more, so it's copied here as it is and looked up by the frame's energy index. The arithmetic
+ * is 32-bit, where the AVR's would overflow 16 bits on the very loudest sounds. The 10-bit output is scaled up to fill
+ * a 16-bit sample.
+ */
+public class TalkieSynthesizer implements LpcSynthesizer {
+
+  private static final int OUTPUT_MIN = -512;
+  private static final int OUTPUT_MAX = 511;
+  private static final int OUTPUT_SCALE_SHIFT = 6;
+
+  /*
+   * Talkie's tmsEnergy, by energy index.
+   */
+  private static final int[] ENERGY = { 0x00, 0x02, 0x03, 0x04, 0x05, 0x07, 0x0A, 0x0F, 0x14, 0x20, 0x29, 0x39, 0x51,
+          0x72, 0xA1, 0xFF };
+
+  // unvoiced frames only carry the first 4 reflection coefficients
+  private static final int UNVOICED_K_COUNT = 4;
+
+  private static final int NOISE_SEED = 1;
+  private static final int NOISE_TAPS = 0xB800;
+
+  // the frame's parameters, at Talkie's widths
+  private int energy;
+  private int period;
+  private final int[] k = new int[10];
+
+  // excitation state
+  private int periodCounter;
+  private int noise = NOISE_SEED;
+
+  // the lattice filter's delays
+  private final int[] x = new int[10];
+
+  @Override
+  public void synthesize(LPCParameters frame, short[] samples, int offset) {
+    loadFrame(frame);
+    for (int i = 0; i < FRAME_SAMPLES; i++) {
+      samples[offset + i] = (short) (nextSample() << OUTPUT_SCALE_SHIFT);
+    }
+  }
+
+  @Override
+  public void reset() {
+    energy = 0;
+    period = 0;
+    Arrays.fill(k, 0);
+    periodCounter = 0;
+    noise = NOISE_SEED;
+    Arrays.fill(x, 0);
+  }
+
+  /*
+   * Only what the frame carries is loaded, the rest is left from earlier frames. A silent frame only sets the energy, a
+   * repeated frame keeps the reflection coefficients and an unvoiced frame keeps K5 to K10 from the last voiced frame.
+   */
+  private void loadFrame(LPCParameters frame) {
+    energy = ENERGY[frame.energyParam];
+    if (frame.isSilent()) {
+      return;
+    }
+    period = frame.pitch >> 8;
+    if (frame.isRepeat()) {
+      return;
+    }
+    k[0] = frame.kVal[0];
+    k[1] = frame.kVal[1];
+    int kCount = frame.isUnvoiced() ? UNVOICED_K_COUNT : k.length;
+    for (int i = 2; i < kCount; i++) {
+      k[i] = frame.kVal[i] >> 8;
+    }
+  }
+
+  private int nextSample() {
+    int u10;
+    if (period > 0) {
+      if (periodCounter < period) {
+        periodCounter++;
+      } else {
+        periodCounter = 0;
+      }
+      u10 = periodCounter < RomTables.chirptable.length ? RomTables.chirptable[periodCounter] * energy >> 8 : 0;
+    } else {
+      noise = (noise >> 1) ^ ((noise & 1) != 0 ? NOISE_TAPS : 0);
+      u10 = (noise & 1) != 0 ? energy : -energy;
+    }
+
+    // forward through the lattice, then the delays for the next sample
+    int u9 = u10 - (k[9] * x[9] >> 7);
+    int u8 = u9 - (k[8] * x[8] >> 7);
+    int u7 = u8 - (k[7] * x[7] >> 7);
+    int u6 = u7 - (k[6] * x[6] >> 7);
+    int u5 = u6 - (k[5] * x[5] >> 7);
+    int u4 = u5 - (k[4] * x[4] >> 7);
+    int u3 = u4 - (k[3] * x[3] >> 7);
+    int u2 = u3 - (k[2] * x[2] >> 7);
+    int u1 = u2 - (k[1] * x[1] >> 15);
+    // clipped before it goes back into the delays, as Talkie does
+    int u0 = Math.max(OUTPUT_MIN, Math.min(OUTPUT_MAX, u1 - (k[0] * x[0] >> 15)));
+
+    x[9] = x[8] + (k[8] * u8 >> 7);
+    x[8] = x[7] + (k[7] * u7 >> 7);
+    x[7] = x[6] + (k[6] * u6 >> 7);
+    x[6] = x[5] + (k[5] * u5 >> 7);
+    x[5] = x[4] + (k[4] * u4 >> 7);
+    x[4] = x[3] + (k[3] * u3 >> 7);
+    x[3] = x[2] + (k[2] * u2 >> 7);
+    x[2] = x[1] + (k[1] * u1 >> 15);
+    x[1] = x[0] + (k[0] * u0 >> 15);
+    x[0] = u0;
+
+    return u0;
+  }
+
+}
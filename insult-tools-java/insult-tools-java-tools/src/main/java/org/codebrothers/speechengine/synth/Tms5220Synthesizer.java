@@ -0,0 +1,153 @@
+package org.codebrothers.speechengine.synth;
+
+import java.util.Arrays;
+
+import v9t9.engine.speech.LPCParameters;
+import v9t9.engine.speech.RomTables;
+
+/**
+ * Synthesizes speech as the TMS5220 does, interpolating from one frame's parameters to the next, in the fixed point
+ * arithmetic of the emulation {@link RomTables} comes from.
+ *
+ * <h2>Interpolation</h2>
+ *
+ * A frame of 200 samples is 8 interpolation periods of 25 samples. The first period plays the previous frame's
+ * parameters, then at the start of each period after it every parameter moves a step closer to the new frame's:
+ * current += (target - current) / interp_coeff[period]. The last step divides by one, so a frame always ends on its own
+ * parameters. As on the chip, interpolation is inhibited, the new parameters taking effect straight away, when speech
+ * starts after a silent frame and when switching between voiced and unvoiced. A silent frame fades the energy out and
+ * leaves the filter as it was.
+ *
+ * <h2>Excitation and filter</h2>
+ *
+ * Voiced frames are excited by the chirp, restarting every pitch period, unvoiced frames by plus or minus 64 from the
+ * chip's 13-bit LFSR. The excitation is scaled by the energy, then run through the 10 stage lattice filter with every
+ * reflection coefficient a 15-bit fraction. The output is clipped to the chip's 10 bits, then scaled up to fill a
+ * 16-bit sample.
+ *
+ * Everything is integer arithmetic with arithmetic shifts, so the same frames always give the same samples, bit for
+ * bit, whatever it runs on.
+ */
+public class Tms5220Synthesizer implements LpcSynthesizer {
+
+  private static final int INTERPOLATION_PERIOD = 25;
+
+  private static final int ENERGY_SHIFT = 13;
+  private static final int K_SHIFT = 15;
+
+  private static final int OUTPUT_MIN = -512;
+  private static final int OUTPUT_MAX = 511;
+  private static final int OUTPUT_SCALE_SHIFT = 6;
+
+  private static final int NOISE_SEED = 0x1FFF;
+  private static final int NOISE_LEVEL = 64;
+
+  // where the parameters are now, and where they're heading by the end of the frame
+  private int currentEnergy;
+  private int currentPitch;
+  private final int[] currentK = new int[10];
+  private int targetEnergy;
+  private int targetPitch;
+  private final int[] targetK = new int[10];
+
+  // what the last frame was, for inhibiting interpolation
+  private boolean previousSilent = true;
+  private boolean previousUnvoiced;
+
+  // excitation state
+  private int pitchCount;
+  private int noise = NOISE_SEED;
+
+  // the lattice filter
+  private final int[] u = new int[11];
+  private final int[] x = new int[10];
+
+  @Override
+  public void synthesize(LPCParameters frame, short[] samples, int offset) {
+    loadFrame(frame);
+    for (int i = 0; i < FRAME_SAMPLES; i++) {
+      if (i > 0 && i % INTERPOLATION_PERIOD == 0) {
+        interpolate(RomTables.interp_coeff[i / INTERPOLATION_PERIOD]);
+      }
+      samples[offset + i] = (short) (nextSample() << OUTPUT_SCALE_SHIFT);
+    }
+  }
+
+  @Override
+  public void reset() {
+    currentEnergy = currentPitch = targetEnergy = targetPitch = 0;
+    Arrays.fill(currentK, 0);
+    Arrays.fill(targetK, 0);
+    previousSilent = true;
+    previousUnvoiced = false;
+    pitchCount = 0;
+    noise = NOISE_SEED;
+    Arrays.fill(u, 0);
+    Arrays.fill(x, 0);
+  }
+
+  /*
+   * The last frame's targets are where this one starts from.
+   */
+  private void loadFrame(LPCParameters frame) {
+    boolean silent = frame.isSilent();
+    boolean unvoiced = frame.isUnvoiced();
+    boolean inhibit = previousSilent && !silent || !silent && !previousSilent && unvoiced != previousUnvoiced;
+
+    currentEnergy = targetEnergy;
+    currentPitch = targetPitch;
+    System.arraycopy(targetK, 0, currentK, 0, currentK.length);
+
+    targetEnergy = frame.energy;
+    if (!silent) {
+      targetPitch = frame.pitch >> 8;
+      System.arraycopy(frame.kVal, 0, targetK, 0, targetK.length);
+    }
+
+    if (inhibit) {
+      currentEnergy = targetEnergy;
+      currentPitch = targetPitch;
+      System.arraycopy(targetK, 0, currentK, 0, currentK.length);
+    }
+    previousSilent = silent;
+    if (!silent) {
+      previousUnvoiced = unvoiced;
+    }
+  }
+
+  private void interpolate(int coefficient) {
+    currentEnergy += (targetEnergy - currentEnergy) / coefficient;
+    // the pitch only glides between voiced frames, there's nothing to glide from otherwise
+    if (currentPitch != 0) {
+      currentPitch += (targetPitch - currentPitch) / coefficient;
+    }
+    for (int k = 0; k < currentK.length; k++) {
+      currentK[k] += (targetK[k] - currentK[k]) / coefficient;
+    }
+  }
+
+  private int nextSample() {
+    int excitation;
+    if (currentPitch > 0) {
+      excitation = pitchCount < RomTables.chirptable.length ? RomTables.chirptable[pitchCount] : 0;
+      pitchCount = pitchCount + 1 >= currentPitch ? 0 : pitchCount + 1;
+    } else {
+      int bit = (noise >> 12 ^ noise >> 10 ^ noise >> 9 ^ noise) & 1;
+      noise = noise >> 1 | bit << 12;
+      excitation = (noise & 1) != 0 ? NOISE_LEVEL : -NOISE_LEVEL;
+      pitchCount = 0;
+    }
+
+    u[10] = excitation * currentEnergy >> ENERGY_SHIFT;
+    for (int i = 9; i >= 0; i--) {
+      u[i] = u[i + 1] - (currentK[i] * x[i] >> K_SHIFT);
+    }
+    for (int i = 9; i >= 1; i--) {
+      x[i] = x[i - 1] + (currentK[i - 1] * u[i - 1] >> K_SHIFT);
+    }
+    x[0] = u[0];
+
+    return Math.max(OUTPUT_MIN, Math.min(OUTPUT_MAX, u[0]));
+  }
+
+}
@@ -0,0 +1,69 @@
+package org.codebrothers.speechengine.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes files so that readers, and other processes writing the same file, only ever see a whole file: it's written to
+ * a temporary file alongside, then moved into place.
+ *
+ * Temporary files are named after the file they'll replace and end in {@link #TEMP_EXTENSION}, so they can be told
+ * apart, and cleaned up, if a process dies before moving one into place.
+ */
+public class AtomicFileUtils {
+
+  public static final String TEMP_EXTENSION = ".tmp";
+
+  /**
+   * Writes a file's contents to the path it's given, e.g. a library that only writes to a named file.
+   */
+  @FunctionalInterface
+  public interface FileOutput {
+
+    void writeTo(Path path) throws IOException;
+
+  }
+
+  public static void write(Path path, byte[] bytes) throws IOException {
+    write(path, tempPath -> Files.write(tempPath, bytes));
+  }
+
+  /**
+   * Writes the file through a temporary file, which replaces it once written. If the output fails the temporary file
+   * is deleted and the file is left as it was.
+   */
+  public static void write(Path path, FileOutput fileOutput) throws IOException {
+    Path tempPath = createTempFile(path);
+    try {
+      fileOutput.writeTo(tempPath);
+      moveIntoPlace(tempPath, path);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * A new, empty temporary file in the same directory as the path, so it can be moved over it atomically.
+   */
+  public static Path createTempFile(Path path) throws IOException {
+    Path directory = path.toAbsolutePath().getParent();
+    return Files.createTempFile(directory, FilenameUtils.fileName(path), TEMP_EXTENSION);
+  }
+
+  /**
+   * Moves a finished temporary file over the path, atomically where the file system can. Some can't, or won't replace
+   * an existing file atomically, those fall back to a plain replace.
+   */
+  public static void moveIntoPlace(Path tempPath, Path path) throws IOException {
+    try {
+      Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+      Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
@@ -1,10 +1,34 @@
 package org.codebrothers.speechengine.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.Collections;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class ByteArrayUtils {
 
+  /*
+   * The two hex digits of every byte value, byte b at [b * 2] and [b * 2 + 1].
+   */
+  private static final char[] HEX_DIGIT_PAIRS = new char[512];
+
+  static {
+    char[] digits = "0123456789ABCDEF".toCharArray();
+    for (int b = 0; b < 256; b++) {
+      HEX_DIGIT_PAIRS[b * 2] = digits[b >> 4];
+      HEX_DIGIT_PAIRS[b * 2 + 1] = digits[b & 0xF];
+    }
+  }
+
+  /*
+   * Characters gathered before being passed on, so a Writer isn't called (and locked) for every byte.
+   */
+  private static final int CHUNK_SIZE = 8192;
+
   public static String toHexString(byte[] byteArray) {
     return toHexString(byteArray, -1).toString();
   }
@@ -18,35 +42,122 @@ public class ByteArrayUtils {
    *
    * Injects the comments (using toString) when a particular address is hit.
    */
-  public static String toHexString(byte[] byteArray, int bytesPerLine, Map<Integer, Object> comments) {
+  public static String toHexString(byte[] byteArray, int bytesPerLine, Map<Integer, ?> comments) {
+    // six characters a byte, ", 0xFF"
+    StringBuilder builder = new StringBuilder(byteArray.length * 6 + comments.size() * 64);
+    try {
+      appendHex(builder, byteArray, bytesPerLine, comments);
+    } catch (IOException e) {
+      // a StringBuilder doesn't throw
+      throw new UncheckedIOException(e);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * As {@link #toHexString(byte[], int, Map)}, but the text is written to the appendable a chunk at a time, so it
+   * needn't all be held in memory at once. Nothing is flushed.
+   */
+  public static void appendHex(Appendable out, byte[] byteArray, int bytesPerLine, Map<Integer, ?> comments)
+          throws IOException {
+    // the comments in address order, to be merged in as the bytes go by rather than looked up for each one
+    SortedMap<Integer, ?> sortedComments = new TreeMap<>(comments).tailMap(0);
+    int[] commentOffsets = new int[sortedComments.size()];
+    Object[] commentValues = new Object[sortedComments.size()];
+    int commentCount = 0;
+    for (Map.Entry<Integer, ?> comment : sortedComments.entrySet()) {
+      commentOffsets[commentCount] = comment.getKey();
+      commentValues[commentCount++] = comment.getValue();
+    }
+
+    HexChunk chunk = new HexChunk(out);
+    int nextComment = 0;
     int commentOffset = 0;
-    StringBuilder builder = new StringBuilder();
     for (int i = 0; i < byteArray.length; i++) {
+      boolean lineBroken = false;
       if (i > 0) {
-        builder.append(", ");
+        chunk.append(',').append(' ');
         if (bytesPerLine > 0 && ((i - commentOffset) % bytesPerLine) == 0) {
-          builder.append("\n");
+          chunk.append('\n');
+          lineBroken = true;
         }
       }
 
-      if (comments.containsKey(i)) {
-        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
-          builder.append("\n");
+      if (nextComment < commentCount && commentOffsets[nextComment] == i) {
+        if (i > 0 && !lineBroken) {
+          chunk.append('\n');
+        }
+        chunk.append("\n// Address: 0x");
+        chunk.appendHexByte(i);
+        chunk.append(", 0x");
+        chunk.appendHexByte(i >> 8);
+        // the upper bytes only once the ROM grows past 64k
+        for (int shift = 16; shift < 32 && (i >>> shift) != 0; shift += 8) {
+          chunk.append(", 0x");
+          chunk.appendHexByte(i >>> shift);
         }
-        builder.append("\n// Address: 0x");
-        builder.append(String.format("%02X", (byte) (i & 0xFF)));
-        builder.append(", 0x");
-        builder.append(String.format("%02X", (byte) ((i >> 8) & 0xFF)));
-        builder.append(" - ");
-        builder.append(comments.get(i));
-        builder.append("\n\n");
+        chunk.append(" - ");
+        chunk.append(String.valueOf(commentValues[nextComment++]));
+        chunk.append("\n\n");
         commentOffset = i;
       }
 
-      builder.append("0x");
-      builder.append(String.format("%02X", byteArray[i]));
+      chunk.append('0').append('x');
+      chunk.appendHexByte(byteArray[i]);
     }
-    return builder.toString();
+    chunk.flush();
+  }
+
+  /*
+   * Gathers characters into a fixed buffer, passing them on to the appendable whenever it fills.
+   */
+  private static class HexChunk {
+
+    private final Appendable out;
+    private final char[] chars = new char[CHUNK_SIZE];
+    private int length;
+
+    public HexChunk(Appendable out) {
+      this.out = out;
+    }
+
+    public HexChunk append(char c) throws IOException {
+      if (length == chars.length) {
+        flush();
+      }
+      chars[length++] = c;
+      return this;
+    }
+
+    public HexChunk append(String s) throws IOException {
+      if (s.length() > chars.length - length) {
+        flush();
+        if (s.length() > chars.length) {
+          out.append(s);
+          return this;
+        }
+      }
+      s.getChars(0, s.length(), chars, length);
+      length += s.length();
+      return this;
+    }
+
+    public void appendHexByte(int b) throws IOException {
+      int pair = (b & 0xFF) * 2;
+      append(HEX_DIGIT_PAIRS[pair]).append(HEX_DIGIT_PAIRS[pair + 1]);
+    }
+
+    public void flush() throws IOException {
+      if (out instanceof StringBuilder) {
+        ((StringBuilder) out).append(chars, 0, length);
+      } else if (out instanceof Writer) {
+        ((Writer) out).write(chars, 0, length);
+      } else {
+        out.append(CharBuffer.wrap(chars, 0, length));
+      }
+      length = 0;
+    }
+
   }
 
 }
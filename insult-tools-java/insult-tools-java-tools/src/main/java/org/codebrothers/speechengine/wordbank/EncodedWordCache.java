@@ -0,0 +1,204 @@
+package org.codebrothers.speechengine.wordbank;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codebrothers.speechengine.util.AtomicFileUtils;
+import org.codebrothers.speechengine.util.FilenameUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A content addressed, on-disk cache of encoded words.
+ *
+ * Entries are keyed by a SHA-256 of the encoder configuration and the WAV file's bytes, so an entry never goes stale:
+ * if either changes, so does the key. Each entry is a file holding the Talkie bytes for one word.
+ *
+ * Several builds can share a cache directory at once. Entries are written to a temporary file and atomically moved
+ * into place, so readers only ever see whole entries, and as keys are content addressed, racing writers write the same
+ * bytes. Reads and evictions tolerate entries disappearing underneath them.
+ *
+ * The cache is bounded in size. Hits refresh an entry's modification time and once the cache grows past its limit the
+ * least recently used entries are deleted until it is back under.
+ */
+public class EncodedWordCache {
+
+  /*
+   * Bump when the encoding changes in a way the configuration doesn't capture, so old entries are not used.
+   */
+  private static final String CACHE_VERSION = "talkie-2";
+
+  private static final String ENTRY_EXTENSION = ".lpc";
+
+  /*
+   * Temporary files older than this are assumed to have been left behind by a build that died.
+   */
+  private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private final Path cacheDirectory;
+  private final long maxBytes;
+
+  // running estimate of the cache size, re-measured whenever an eviction runs
+  private long cacheBytes;
+
+  public EncodedWordCache(Path cacheDirectory) throws IOException {
+    this(cacheDirectory, DEFAULT_MAX_BYTES);
+  }
+
+  public EncodedWordCache(Path cacheDirectory, long maxBytes) throws IOException {
+    Preconditions.checkNotNull(cacheDirectory, "cacheDirectory may not be null");
+    Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+    this.cacheDirectory = Files.createDirectories(cacheDirectory);
+    this.maxBytes = maxBytes;
+    this.cacheBytes = measure();
+  }
+
+  /**
+   * Works out the cache key for a WAV file encoded with the given configuration.
+   */
+  public String key(Path wavFile, String configuration) throws IOException {
+    MessageDigest digest = sha256();
+    digest.update((CACHE_VERSION + "\n" + configuration + "\n").getBytes(StandardCharsets.UTF_8));
+    byte[] buffer = new byte[8192];
+    try (InputStream inputStream = Files.newInputStream(wavFile)) {
+      int read;
+      while ((read = inputStream.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns the cached bytes, or null on a miss.
+   */
+  public byte[] get(String key) throws IOException {
+    Path entry = entryPath(key);
+    byte[] data;
+    try {
+      data = Files.readAllBytes(entry);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    // refreshing the time is only a hint for eviction, the bytes are good whether or not it works
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // evicted by another build since we read it, owned by another user or a read only cache
+    }
+    return data;
+  }
+
+  public void put(String key, byte[] data) throws IOException {
+    // racing writers write the same bytes, so it doesn't matter whose lands last
+    AtomicFileUtils.write(entryPath(key), data);
+
+    boolean evict;
+    synchronized (this) {
+      cacheBytes += data.length;
+      evict = cacheBytes > maxBytes;
+    }
+    if (evict) {
+      evict();
+    }
+  }
+
+  /**
+   * Deletes least recently used entries until the cache is at 90% of its limit, leaving room to grow before the next
+   * eviction.
+   */
+  public synchronized void evict() throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    long total = 0;
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(cacheDirectory)) {
+      for (Path path : ds) {
+        try {
+          FileTime time = Files.getLastModifiedTime(path);
+          if (FilenameUtils.fileName(path).endsWith(AtomicFileUtils.TEMP_EXTENSION)) {
+            if (now - time.toMillis() > STALE_TEMP_MILLIS) {
+              Files.deleteIfExists(path);
+            }
+          } else if (FilenameUtils.fileName(path).endsWith(ENTRY_EXTENSION)) {
+            Entry entry = new Entry(path, Files.size(path), time.toMillis());
+            total += entry.size;
+            entries.add(entry);
+          }
+        } catch (NoSuchFileException e) {
+          // removed by another build
+        }
+      }
+    }
+
+    // oldest first
+    entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+
+    long target = maxBytes - maxBytes / 10;
+    for (int i = 0; i < entries.size() && total > target; i++) {
+      Entry entry = entries.get(i);
+      if (Files.deleteIfExists(entry.path)) {
+        total -= entry.size;
+      }
+    }
+    cacheBytes = total;
+  }
+
+  private Path entryPath(String key) {
+    return cacheDirectory.resolve(key + ENTRY_EXTENSION);
+  }
+
+  private long measure() throws IOException {
+    long total = 0;
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(cacheDirectory, "*" + ENTRY_EXTENSION)) {
+      for (Path path : ds) {
+        try {
+          total += Files.size(path);
+        } catch (NoSuchFileException e) {
+          // removed by another build
+        }
+      }
+    }
+    return total;
+  }
+
+  private static class Entry {
+
+    private final Path path;
+    private final long size;
+    private final long lastUsed;
+
+    public Entry(Path path, long size, long lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.", e);
+    }
+  }
+
+}
@@ -3,13 +3,23 @@ package org.codebrothers.speechengine.wordbank;
 import static org.codebrothers.speechengine.util.ByteArrayUtils.toHexString;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.codebrothers.speechengine.TalkieSpeechEncoder;
+import org.codebrothers.speechengine.rom.RomFormat;
 import org.codebrothers.speechengine.util.FilenameUtils;
 import org.codebrothers.speechengine.util.PathPreconditions;
 
@@ -23,6 +33,9 @@ import v9t9.engine.speech.encode.LPCSpeechAnalyzer;
  *
  * A little rough and ready, but it works. A word bank could also possibly be constructed from a set of words and a
  * desktop TTS application. That would be nice!
+ *
+ * Words can be encoded in parallel, each WAV file is analyzed with its own engine and filter (see
+ * {@link LPCSpeechAnalyzer}) so the resulting word bank is the same as a sequential run.
  */
 public class WordBankProcessor {
 
@@ -34,49 +47,175 @@ public class WordBankProcessor {
   private final LPCSpeechAnalyzer lpcSpeechAnalyzer;
   private final TalkieSpeechEncoder talkieSpeechEncoder;
 
+  // optional, when present encoded words are looked up before running the analysis
+  private final EncodedWordCache encodedWordCache;
+
   public WordBankProcessor() {
     this(new LPCSpeechAnalyzer(), new TalkieSpeechEncoder());
   }
 
+  public WordBankProcessor(EncodedWordCache encodedWordCache) {
+    this(new LPCSpeechAnalyzer(), new TalkieSpeechEncoder(), encodedWordCache);
+  }
+
   public WordBankProcessor(LPCSpeechAnalyzer lpcSpeechAnalyzer, TalkieSpeechEncoder talkieSpeechEncoder) {
+    this(lpcSpeechAnalyzer, talkieSpeechEncoder, null);
+  }
+
+  public WordBankProcessor(LPCSpeechAnalyzer lpcSpeechAnalyzer, TalkieSpeechEncoder talkieSpeechEncoder,
+          EncodedWordCache encodedWordCache) {
     super();
     this.lpcSpeechAnalyzer = lpcSpeechAnalyzer;
     this.talkieSpeechEncoder = talkieSpeechEncoder;
+    this.encodedWordCache = encodedWordCache;
   }
 
   public static void main(String[] args) throws IOException, WavFileException {
-    if (args.length != 1) {
-      System.out.println("Usage: WordBankProcessor [path_to_directory]");
+    // an optional output file comes first, the rest of the arguments are as they always were
+    Path outputPath = null;
+    if (args.length > 1 && args[0].equals("-o")) {
+      outputPath = Paths.get(args[1]);
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+
+    if (args.length < 1 || args.length > 2) {
+      System.out.println(
+              "Usage: WordBankProcessor [-o output_file.bin|.hex|.h] [path_to_directory] [optional_cache_directory]");
       System.exit(1);
     }
 
     Path path = Paths.get(args[0]);
-    WordBankProcessor wordBankProcessor = new WordBankProcessor();
-    WordBank wordBank = wordBankProcessor.process(path);
+    WordBankProcessor wordBankProcessor =
+            args.length > 1 ? new WordBankProcessor(new EncodedWordCache(Paths.get(args[1]))) : new WordBankProcessor();
+    WordBank wordBank = wordBankProcessor.processParallel(path);
+
+    if (outputPath != null) {
+      writeWordBank(wordBank, outputPath);
+      return;
+    }
+
     for (Entry<String, byte[]> wordEntry : wordBank.entrySet()) {
       System.out.println("uint8_t " + wordEntry.getKey() + "[] PROGMEM = {" + toHexString(wordEntry.getValue()) + "};");
     }
   }
 
+  /*
+   * Writes the words back to back, in alphabetical order, reporting where each one landed. The file is only replaced
+   * once every word has been written.
+   */
+  private static void writeWordBank(WordBank wordBank, Path outputPath) throws IOException {
+    int[] offset = { 0 };
+    RomFormat.write(outputPath, romWriter -> {
+      for (Entry<String, byte[]> wordEntry : new TreeMap<>(wordBank).entrySet()) {
+        byte[] data = wordEntry.getValue();
+        romWriter.comment(wordEntry.getKey());
+        romWriter.write(data);
+        System.out.println(wordEntry.getKey() + ": offset " + offset[0] + ", " + data.length + " bytes");
+        offset[0] += data.length;
+      }
+    });
+    System.out.println("Word bank of " + offset[0] + " bytes written to " + outputPath);
+  }
+
   public WordBank process(Path wordBankPath) throws IOException, WavFileException {
     PathPreconditions.checkReadableDirectory(wordBankPath);
 
     WordBank wordBank = new WordBank();
-    try (DirectoryStream<Path> ds = Files.newDirectoryStream(wordBankPath, WordBankProcessor::isPathValid)) {
-      for (Path path : ds) {
-        // encode word data
-        byte[] data = talkieSpeechEncoder.encode(lpcSpeechAnalyzer.analyze(path));
+    for (Path path : wavFiles(wordBankPath)) {
+      // get word string, just trim the file extension, and add the encoded word data
+      wordBank.put(FilenameUtils.fileNameWithoutExtension(path), encode(path));
+    }
+    return wordBank;
+  }
 
-        // get word string, just trim the file extension
-        String word = FilenameUtils.fileNameWithoutExtension(path);
+  /**
+   * Encodes the word bank on the common fork-join pool.
+   */
+  public WordBank processParallel(Path wordBankPath) throws IOException, WavFileException {
+    return process(wordBankPath, ForkJoinPool.commonPool());
+  }
 
-        // add word to builder
-        wordBank.put(word, data);
+  /**
+   * Encodes each WAV file as a separate task on the given executor. The executor is not shut down.
+   */
+  public WordBank process(Path wordBankPath, ExecutorService executor) throws IOException, WavFileException {
+    PathPreconditions.checkReadableDirectory(wordBankPath);
+    return process(wavFiles(wordBankPath), executor);
+  }
+
+  /**
+   * Encodes just the given WAV files, each as a separate task on the executor. The executor is not shut down.
+   */
+  public WordBank process(List<Path> paths, ExecutorService executor) throws IOException, WavFileException {
+    List<Future<byte[]>> futures = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      futures.add(executor.submit(() -> encode(path)));
+    }
+
+    // collect in submission order, words are only added on this thread
+    WordBank wordBank = new WordBank();
+    try {
+      for (int i = 0; i < paths.size(); i++) {
+        wordBank.put(FilenameUtils.fileNameWithoutExtension(paths.get(i)), await(futures.get(i)));
       }
+    } finally {
+      futures.forEach(future -> future.cancel(true));
     }
     return wordBank;
   }
 
+  private byte[] encode(Path path) throws IOException, WavFileException {
+    if (encodedWordCache == null) {
+      return talkieSpeechEncoder.encode(path, lpcSpeechAnalyzer);
+    }
+
+    String key = encodedWordCache.key(path, lpcSpeechAnalyzer.getConfiguration());
+    byte[] data = encodedWordCache.get(key);
+    if (data == null) {
+      data = talkieSpeechEncoder.encode(path, lpcSpeechAnalyzer);
+      encodedWordCache.put(key, data);
+    }
+    return data;
+  }
+
+  /**
+   * The WAV files in a word bank directory, one per word.
+   */
+  public static List<Path> wavFiles(Path wordBankPath) throws IOException {
+    List<Path> paths = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(wordBankPath, WordBankProcessor::isPathValid)) {
+      ds.forEach(paths::add);
+    }
+    return paths;
+  }
+
+  /*
+   * Waits for an encoding task, re-throwing whatever it failed with.
+   */
+  private static byte[] await(Future<byte[]> future) throws IOException, WavFileException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while encoding word bank.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof WavFileException) {
+        throw (WavFileException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
   /**
    * Must be regular file, readable and match the filename pattern.
    */
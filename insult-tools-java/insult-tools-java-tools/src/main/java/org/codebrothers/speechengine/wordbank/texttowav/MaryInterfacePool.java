@@ -0,0 +1,76 @@
+package org.codebrothers.speechengine.wordbank.texttowav;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import marytts.MaryInterface;
+import marytts.exceptions.MaryConfigurationException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded pool of Mary interfaces. They aren't safe to share between threads, so each is borrowed by one thread at a
+ * time and given back when it's done.
+ *
+ * Interfaces are only created as they are needed, up to the pool's size, as each loads a voice. Once that many are in
+ * use, borrowers wait for one to be given back.
+ */
+class MaryInterfacePool {
+
+  private final WordBankGenerator.MaryInterfaceFactory maryInterfaceFactory;
+  private final int size;
+  private final BlockingQueue<MaryInterface> idle = new LinkedBlockingQueue<>();
+
+  // how many have been created, or are being created, guarded by this
+  private int created;
+
+  public MaryInterfacePool(WordBankGenerator.MaryInterfaceFactory maryInterfaceFactory, int size) {
+    Preconditions.checkNotNull(maryInterfaceFactory, "maryInterfaceFactory may not be null");
+    Preconditions.checkArgument(size > 0, "size must be positive");
+    this.maryInterfaceFactory = maryInterfaceFactory;
+    this.size = size;
+  }
+
+  /**
+   * A pool of just the one interface.
+   */
+  public MaryInterfacePool(MaryInterface mary) {
+    this(() -> mary, 1);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public MaryInterface borrow() throws MaryConfigurationException, InterruptedException {
+    MaryInterface mary = idle.poll();
+    if (mary != null) {
+      return mary;
+    }
+
+    // the slot is taken under the lock, but the interface is created outside it, as that's slow
+    boolean create;
+    synchronized (this) {
+      create = created < size;
+      if (create) {
+        created++;
+      }
+    }
+    if (!create) {
+      return idle.take();
+    }
+    try {
+      return maryInterfaceFactory.create();
+    } catch (MaryConfigurationException | RuntimeException e) {
+      synchronized (this) {
+        created--;
+      }
+      throw e;
+    }
+  }
+
+  public void giveBack(MaryInterface mary) {
+    idle.add(mary);
+  }
+
+}
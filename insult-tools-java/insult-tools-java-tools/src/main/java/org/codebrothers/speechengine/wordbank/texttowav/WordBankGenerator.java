@@ -1,10 +1,20 @@
 package org.codebrothers.speechengine.wordbank.texttowav;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.sound.sampled.AudioInputStream;
 
@@ -16,6 +26,7 @@ import marytts.util.data.audio.MaryAudioUtils;
 
 import org.codebrothers.speechengine.phrasepack.PhrasePack;
 import org.codebrothers.speechengine.phrasepack.PhrasePackParser;
+import org.codebrothers.speechengine.util.AtomicFileUtils;
 import org.codebrothers.speechengine.util.PathPreconditions;
 
 import com.google.common.base.Preconditions;
@@ -23,6 +34,13 @@ import com.ibm.icu.text.MessageFormat;
 
 /**
  * Generates a word bank on the file system from a phrase bank using Mary TTS.
+ *
+ * Words are generated concurrently, on as many worker threads as there are Mary interfaces in the pool (see
+ * {@link MaryInterfacePool}). Each WAV file is written to a temporary file first and moved into place, so a run that's
+ * stopped part way never leaves a partly written word behind.
+ *
+ * Generating from a phrase pack can skip the words already generated since the pack last changed, those whose WAV file
+ * is newer than every phrase bank file, so an interrupted run picks up where it left off.
  */
 public class WordBankGenerator {
 
@@ -30,52 +48,225 @@ public class WordBankGenerator {
 
   private static final String DEFAULT_VOICE = "cmu-rms-hsmm";
 
-  private final MaryInterface mary;
+  private static final String WAV_EXTENSION = ".wav";
 
+  /**
+   * Creates the Mary interfaces for the pool.
+   */
+  @FunctionalInterface
+  public interface MaryInterfaceFactory {
+
+    MaryInterface create() throws MaryConfigurationException;
+
+  }
+
+  private final MaryInterfacePool maryInterfacePool;
+
+  /**
+   * Generates one word at a time with the default voice. The interface is created for the first word that needs it.
+   */
   public WordBankGenerator() throws MaryConfigurationException {
-    this(createDefaultMaryInterface());
+    this(WordBankGenerator::createDefaultMaryInterface, 1);
   }
 
+  /**
+   * Generates one word at a time with the given interface.
+   */
   public WordBankGenerator(MaryInterface mary) {
-    this.mary = mary;
+    this.maryInterfacePool = new MaryInterfacePool(mary);
+  }
+
+  /**
+   * Generates up to poolSize words at once, each worker thread borrowing an interface from a pool of up to poolSize
+   * created by the factory.
+   */
+  public WordBankGenerator(MaryInterfaceFactory maryInterfaceFactory, int poolSize) {
+    this.maryInterfacePool = new MaryInterfacePool(maryInterfaceFactory, poolSize);
   }
 
   public static void main(String[] args) throws Exception {
-    if (args.length != 2) {
-      System.out.println("Usage: WordBankGenerator [phrase_pack_directory] [word_output_directory]");
-      System.exit(1);
+    // options come first, the rest of the arguments are as they always were
+    int threads = 1;
+    boolean skipUpToDate = false;
+    int arg = 0;
+    while (arg < args.length && args[arg].startsWith("-")) {
+      String option = args[arg++];
+      if (option.equals("-t") && arg < args.length) {
+        threads = Integer.parseInt(args[arg++]);
+      } else if (option.equals("-u")) {
+        skipUpToDate = true;
+      } else {
+        usage();
+      }
     }
+    args = Arrays.copyOfRange(args, arg, args.length);
 
-    WordBankGenerator wordBankGenerator = new WordBankGenerator();
-    wordBankGenerator.generateWordBank(Paths.get(args[0]), Paths.get(args[1]));
+    if (args.length < 2 || args.length > 3 || threads < 1) {
+      usage();
+    }
+
+    // interfaces are only created once a word needs generating, the voices are listed by the first
+    AtomicBoolean voicesListed = new AtomicBoolean();
+    WordBankGenerator wordBankGenerator = new WordBankGenerator(() -> {
+      MaryInterface mary = createDefaultMaryInterface();
+      if (voicesListed.compareAndSet(false, true)) {
+        System.out.println(mary.getAvailableVoices());
+      }
+      return mary;
+    }, threads);
+    PhrasePackParser phrasePackParser = new PhrasePackParser(args.length > 2 ? Paths.get(args[2]) : null);
+
+    long start = System.nanoTime();
+    int generated = wordBankGenerator.generateWordBank(Paths.get(args[0]), Paths.get(args[1]), phrasePackParser,
+            skipUpToDate);
+    System.out.println("Generated " + generated + " words in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+  }
+
+  private static void usage() {
+    System.out.println("Usage: WordBankGenerator [-t threads] [-u] [phrase_pack_directory] [word_output_directory] "
+            + "[optional_snapshot_directory]");
+    System.out.println("  -u only generates the words missing or older than the phrase pack");
+    System.exit(1);
   }
 
   public void generateWordBank(Path phrasePackPath, Path outputDirectoryPath) throws WordBankGeneratorException,
           IOException {
+    generateWordBank(phrasePackPath, outputDirectoryPath, new PhrasePackParser(), false);
+  }
+
+  /**
+   * As {@link #generateWordBank(Path, Path)}, parsing the phrase pack with the given parser, e.g. one keeping
+   * snapshots.
+   */
+  public void generateWordBank(Path phrasePackPath, Path outputDirectoryPath, PhrasePackParser phrasePackParser)
+          throws WordBankGeneratorException, IOException {
+    generateWordBank(phrasePackPath, outputDirectoryPath, phrasePackParser, false);
+  }
+
+  /**
+   * As {@link #generateWordBank(Path, Path, PhrasePackParser)}. If skipUpToDate, words whose WAV file is newer than
+   * the phrase pack are left as they are. Returns the number of words generated.
+   */
+  public int generateWordBank(Path phrasePackPath, Path outputDirectoryPath, PhrasePackParser phrasePackParser,
+          boolean skipUpToDate) throws WordBankGeneratorException, IOException {
     PathPreconditions.checkReadableDirectory(phrasePackPath);
 
-    PhrasePack phrasePack = new PhrasePackParser().parse(phrasePackPath);
-    generateWordBank(phrasePack.getWords().keySet(), outputDirectoryPath);
+    // the pack is as new as its newest phrase bank file, found before parsing so a change part way through counts
+    FileTime phrasePackTime = null;
+    if (skipUpToDate) {
+      phrasePackTime = FileTime.fromMillis(0);
+      for (Path path : PhrasePackParser.phraseBankPaths(phrasePackPath).values()) {
+        FileTime time = Files.getLastModifiedTime(path);
+        if (time.compareTo(phrasePackTime) > 0) {
+          phrasePackTime = time;
+        }
+      }
+    }
+
+    PhrasePack phrasePack = phrasePackParser.parse(phrasePackPath);
+    return generateWordBank(phrasePack.getWords().keySet(), outputDirectoryPath, phrasePackTime);
   }
 
   public void generateWordBank(Set<String> words, Path outputDirectoryPath) throws WordBankGeneratorException {
+    generateWordBank(words, outputDirectoryPath, null);
+  }
+
+  /**
+   * Generates the words concurrently, skipping those whose WAV file was last modified after upToDateAfter, unless it's
+   * null. Returns the number of words generated.
+   */
+  public int generateWordBank(Set<String> words, Path outputDirectoryPath, FileTime upToDateAfter)
+          throws WordBankGeneratorException {
     Preconditions.checkNotNull(words, "words may not be null");
     PathPreconditions.checkReadableDirectory(outputDirectoryPath);
 
+    List<String> outOfDate = new ArrayList<>();
     for (String word : words) {
-      generateWord(word, outputDirectoryPath);
+      if (upToDateAfter == null || !isUpToDate(outputDirectoryPath.resolve(word + WAV_EXTENSION), upToDateAfter)) {
+        outOfDate.add(word);
+      }
     }
+    if (outOfDate.isEmpty()) {
+      return 0;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(maryInterfacePool.getSize(), outOfDate.size()));
+    List<Future<Void>> futures = new ArrayList<>(outOfDate.size());
+    try {
+      for (String word : outOfDate) {
+        futures.add(executor.submit(() -> {
+          generateWord(word, outputDirectoryPath);
+          return null;
+        }));
+      }
+      // waited for in submission order, so a failure is reported for the first failing word
+      for (int i = 0; i < futures.size(); i++) {
+        await(futures.get(i), outOfDate.get(i));
+      }
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+      executor.shutdownNow();
+    }
+    return outOfDate.size();
   }
 
   private void generateWord(String word, Path outputDirectoryPath) throws WordBankGeneratorException {
+    MaryInterface mary;
+    try {
+      mary = maryInterfacePool.borrow();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WordBankGeneratorException(MessageFormat.format("Interrupted generating word \"{0}\"", word), e);
+    } catch (Exception e) {
+      throw new WordBankGeneratorException(MessageFormat.format("Problem generating word \"{0}\"", word), e);
+    }
+
+    Path wavPath = outputDirectoryPath.resolve(word + WAV_EXTENSION);
     try (AudioInputStream audio = AudioConverterUtils.downSampling(mary.generateAudio(word), 8000)) {
       double[] samplesAsDoubleArray = MaryAudioUtils.getSamplesAsDoubleArray(audio);
-      samplesAsDoubleArray =
+      double[] trimmedSamples =
               Arrays.copyOfRange(samplesAsDoubleArray, 0, Math.max(0, samplesAsDoubleArray.length - TRIM_SAMPLES));
-      MaryAudioUtils.writeWavFile(samplesAsDoubleArray, outputDirectoryPath.resolve(word + ".wav").toString(),
-              audio.getFormat());
+      // a temporary file of its own, so runs sharing the output directory never write to the same one
+      AtomicFileUtils.write(wavPath,
+              tempPath -> MaryAudioUtils.writeWavFile(trimmedSamples, tempPath.toString(), audio.getFormat()));
     } catch (Exception e) {
       throw new WordBankGeneratorException(MessageFormat.format("Problem generating word \"{0}\"", word), e);
+    } finally {
+      maryInterfacePool.giveBack(mary);
+    }
+  }
+
+  private static boolean isUpToDate(Path wavPath, FileTime upToDateAfter) {
+    try {
+      return Files.getLastModifiedTime(wavPath).compareTo(upToDateAfter) > 0;
+    } catch (IOException e) {
+      // missing, or can't be read, so generated again either way
+      return false;
+    }
+  }
+
+  /*
+   * Waits for a word, re-throwing whatever it failed with.
+   */
+  private static void await(Future<Void> future, String word) throws WordBankGeneratorException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WordBankGeneratorException(MessageFormat.format("Interrupted generating word \"{0}\"", word), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof WordBankGeneratorException) {
+        throw (WordBankGeneratorException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
     }
   }
 
@@ -85,7 +276,6 @@ public class WordBankGenerator {
   private static MaryInterface createDefaultMaryInterface() throws MaryConfigurationException {
     LocalMaryInterface mary = new LocalMaryInterface();
     mary.setVoice(DEFAULT_VOICE);
-    System.out.println(mary.getAvailableVoices());
     return mary;
   }
 
@@ -5,13 +5,11 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
-import javax.sound.sampled.AudioFormat;
-
-import uk.co.labbookpages.WavFile;
+import uk.co.labbookpages.MappedWavFile;
 import uk.co.labbookpages.WavFileException;
 import v9t9.common.speech.ILPCParameters;
+import v9t9.engine.speech.LPCParameters;
 
 public class LPCSpeechAnalyzer {
 
@@ -23,6 +21,22 @@ public class LPCSpeechAnalyzer {
   // nominal framerate of 25 ms
   public static final int FRAMES_PER_SECOND = 40;
 
+  // order of the LPC analysis, the TMS5220 has ten K parameters
+  public static final int ORDER = 10;
+
+  // describes the default engine and filter, see defaultEngine and defaultFilter
+  private static final String DEFAULT_ENCODER_ID = "OpenLPCEngine;LowPassLPCFilter(SimpleLPCFilter)";
+
+  /**
+   * Receives each frame's parameters as soon as the frame has been analyzed.
+   */
+  @FunctionalInterface
+  public interface FrameConsumer {
+
+    void accept(ILPCParameters frameParameters) throws IOException;
+
+  }
+
   // playback speed and FPS can be configured if required
   private final int playbackHz;
   private final int framesPerSecond;
@@ -31,66 +45,112 @@ public class LPCSpeechAnalyzer {
   private final Function<LPCEncoderParams, ILPCEngine> engineSupplier;
   private final Function<LPCEncoderParams, ILPCFilter> filterSupplier;
 
+  // identifies what the suppliers produce, worked out on demand if not given
+  private volatile String encoderId;
+
   public LPCSpeechAnalyzer() {
     this(PLAYBACK_HZ, FRAMES_PER_SECOND);
   }
 
   public LPCSpeechAnalyzer(int playbackHz, int framesPerSecond) {
-    this(playbackHz, framesPerSecond, LPCSpeechAnalyzer::defaultEngine, LPCSpeechAnalyzer::defaultFilter);
+    this(playbackHz, framesPerSecond, LPCSpeechAnalyzer::defaultEngine, LPCSpeechAnalyzer::defaultFilter,
+            DEFAULT_ENCODER_ID);
   }
 
   public LPCSpeechAnalyzer(int playbackHz, int framesPerSecond, Function<LPCEncoderParams, ILPCEngine> engineSupplier,
           Function<LPCEncoderParams, ILPCFilter> filterSupplier) {
+    this(playbackHz, framesPerSecond, engineSupplier, filterSupplier, null);
+  }
+
+  /**
+   * The encoder id names the engine and filter the suppliers produce. It should change whenever they would encode
+   * differently, as it is part of {@link #getConfiguration()}. When null, the class names of the supplied engine and
+   * filter are used.
+   */
+  public LPCSpeechAnalyzer(int playbackHz, int framesPerSecond, Function<LPCEncoderParams, ILPCEngine> engineSupplier,
+          Function<LPCEncoderParams, ILPCFilter> filterSupplier, String encoderId) {
     this.playbackHz = playbackHz;
     this.framesPerSecond = framesPerSecond;
     this.engineSupplier = engineSupplier;
     this.filterSupplier = filterSupplier;
+    this.encoderId = encoderId;
+  }
+
+  /**
+   * Describes everything that affects the encoding apart from the recording itself, so encodings can be cached.
+   */
+  public String getConfiguration() {
+    return "playbackHz=" + playbackHz + ";framesPerSecond=" + framesPerSecond + ";order=" + ORDER + ";encoder="
+            + getEncoderId();
   }
 
+  private String getEncoderId() {
+    if (encoderId == null) {
+      // probe the suppliers, any sample rate will do
+      LPCEncoderParams params = new LPCEncoderParams(PLAYBACK_HZ, playbackHz, framesPerSecond, ORDER);
+      ILPCFilter filter = filterSupplier.apply(params);
+      encoderId = engineSupplier.apply(params).getClass().getName() + ";"
+              + (filter != null ? filter.getClass().getName() : "none");
+    }
+    return encoderId;
+  }
+
+  /**
+   * Safe to call from several threads at once, each call gets its own engine and filter from the suppliers.
+   */
   public List<ILPCParameters> analyze(Path wavFile) throws IOException, WavFileException {
-    return analyzeFrames(wavFile).stream().map(LPC_CONVERTER::apply).collect(Collectors.toList());
+    List<ILPCParameters> lpcParameters = new ArrayList<>();
+    analyze(wavFile, null, lpcParameters::add);
+    return lpcParameters;
+  }
+
+  /**
+   * Streams the analysis, handing each frame to the consumer as it is produced rather than collecting the whole
+   * recording. The parameters object passed to the consumer is reused for the next frame, so copy it if it needs to be
+   * kept. Safe to call from several threads at once, as above.
+   */
+  public void analyze(Path wavFile, FrameConsumer consumer) throws IOException, WavFileException {
+    analyze(wavFile, new LPCParameters(), consumer);
   }
 
-  private List<LPCAnalysisFrame> analyzeFrames(Path wavFile) throws IOException, WavFileException {
-    WavFile wf = WavFile.openWavFile(wavFile.toFile());
-    try {
-      return analyzeWF(wf);
-    } finally {
-      wf.close();
+  private void analyze(Path wavFile, LPCParameters reusableParameters, FrameConsumer consumer)
+          throws IOException, WavFileException {
+    try (MappedWavFile wf = MappedWavFile.openWavFile(wavFile)) {
+      analyzeWF(wf, reusableParameters, consumer);
     }
   }
 
-  private List<LPCAnalysisFrame> analyzeWF(WavFile wf) throws IOException, WavFileException {
+  private void analyzeWF(MappedWavFile wf, LPCParameters reusableParameters, FrameConsumer consumer)
+          throws IOException {
     // analyse WavFile, create engine and filter
-    AudioFormat format = new AudioFormat(wf.getSampleRate(), wf.getValidBits(), wf.getNumChannels(), true, false);
-    LPCEncoderParams params = new LPCEncoderParams((int) format.getFrameRate(), playbackHz, framesPerSecond, 10);
+    LPCEncoderParams params = new LPCEncoderParams((int) wf.getSampleRate(), playbackHz, framesPerSecond, ORDER);
     ILPCEngine engine = engineSupplier.apply(params);
     ILPCFilter filter = filterSupplier.apply(params);
 
-    // create our buffer variables
-    int frames = (int) format.getFrameRate() / framesPerSecond;
-    double[][] buffer = new double[format.getChannels()][frames];
+    // samples are decoded straight into the analysis window, multi channel recordings are mixed down to mono
+    int frames = (int) wf.getSampleRate() / framesPerSecond;
     float[] content = new float[frames];
-    int len;
-    int nc = format.getChannels();
-
-    // do the analysis
-    List<LPCAnalysisFrame> analysisFrames = new ArrayList<>();
-    while ((len = wf.readFrames(buffer, frames)) > 0) {
-      for (int i = 0; i < len; i += nc) {
-        content[i] = (float) buffer[0][i];
+
+    // do the analysis, a single analysis frame is reused as each one is converted straight away
+    LPCAnalysisFrame analysisFrame = new LPCAnalysisFrame(params.getOrder());
+    while (wf.readFrames(content, frames, MappedWavFile.DOWNMIX) > 0) {
+      encodeFrame(engine, filter, content, analysisFrame);
+      if (reusableParameters != null) {
+        LPC_CONVERTER.apply(analysisFrame, reusableParameters);
+        consumer.accept(reusableParameters);
+      } else {
+        consumer.accept(LPC_CONVERTER.apply(analysisFrame));
       }
-      analysisFrames.add(encodeFrame(engine, filter, content));
     }
-    return analysisFrames;
   }
 
-  private static LPCAnalysisFrame encodeFrame(ILPCEngine engine, ILPCFilter filter, float[] content) {
+  private static void encodeFrame(ILPCEngine engine, ILPCFilter filter, float[] content,
+          LPCAnalysisFrame analysisFrame) {
     int len = content.length;
     if (filter != null) {
       filter.filter(content, 0, len, content, engine.getY());
     }
-    return engine.analyze(content, 0, len);
+    engine.analyze(content, 0, len, analysisFrame);
   }
 
   private static ILPCFilter defaultFilter(LPCEncoderParams params) {
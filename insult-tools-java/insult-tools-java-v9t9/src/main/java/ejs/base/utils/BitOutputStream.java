@@ -13,6 +13,7 @@ package ejs.base.utils;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Output bits to a byte stream, where bits are arranged in packages
@@ -29,7 +30,7 @@ import java.io.IOException;
  */
 public class BitOutputStream implements Closeable {
 
-	private final ByteArrayOutputStream bos;
+	private final OutputStream bos;
 	// bit pointer, descending from 8 to 1
 	private int bit;
 	private int curByte;
@@ -37,7 +38,16 @@ public class BitOutputStream implements Closeable {
 	private final static int MAX_LENGTH  = 16;
 	
 	public BitOutputStream(ByteArrayOutputStream bos) {
-		this.bos = bos;
+		this((OutputStream) bos);
+	}
+
+	/**
+	 * Write bits straight through to any stream, each byte is passed on
+	 * as soon as it is complete.  {@link #reset()} is only supported when
+	 * the stream is a {@link ByteArrayOutputStream}.
+	 */
+	public BitOutputStream(OutputStream os) {
+		this.bos = os;
 		bit = 8;
 		curByte = 0;
 	}
@@ -54,7 +64,9 @@ public class BitOutputStream implements Closeable {
 	}
 
 	public void reset() {
-		bos.reset();
+		if (!(bos instanceof ByteArrayOutputStream))
+			throw new UnsupportedOperationException();
+		((ByteArrayOutputStream) bos).reset();
 		bit = 8;
 		curByte = 0;
 	}
@@ -0,0 +1,125 @@
+/*
+  BitWriter.java
+
+  (c) 2012 Edward Swartz
+
+  All rights reserved. This program and the accompanying materials
+  are made available under the terms of the Eclipse Public License v1.0
+  which accompanies this distribution, and is available at
+  http://www.eclipse.org/legal/epl-v10.html
+ */
+package ejs.base.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Packs bits in the same order as {@link BitOutputStream}, from the high
+ * part of a byte to the low part, but a word at a time: bits gather in a
+ * 64-bit accumulator and only whole bytes are moved into a growable
+ * array, with no stream or locking in between.  One call can write up to
+ * {@link #MAX_BITS} bits, e.g. a whole speech frame.
+ * <p/>
+ * Not thread safe.
+ */
+public class BitWriter {
+
+	/** Most bits a single {@link #writeBits(long, int)} can take */
+	public final static int MAX_BITS = 57;
+
+	private byte[] bytes;
+	// complete bytes in bytes[]
+	private int length;
+	// bytes already passed on by drainTo
+	private long drained;
+	// pending bits, the low accBits bits of acc
+	private long acc;
+	private int accBits;
+
+	public BitWriter() {
+		this(64);
+	}
+
+	public BitWriter(int capacity) {
+		bytes = new byte[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Write the low count bits of value, high bit first
+	 */
+	public void writeBits(long value, int count) {
+		if (count == 0)
+			return;
+		if (count < 0 || count > MAX_BITS)
+			throw new IllegalArgumentException();
+
+		if (accBits + count > 64)
+			spill();
+
+		acc = acc << count | (value & (-1L >>> (64 - count)));
+		accBits += count;
+	}
+
+	/**
+	 * Fill with zero bits up to the next byte boundary, as closing a
+	 * {@link BitOutputStream} does
+	 */
+	public void padToByte() {
+		int pad = -accBits & 7;
+		acc <<= pad;
+		accBits += pad;
+	}
+
+	/** Number of bits written since the last reset */
+	public long bitLength() {
+		return (drained + length) * 8 + accBits;
+	}
+
+	/** Number of complete bytes waiting to be drained */
+	public int byteLength() {
+		return length + accBits / 8;
+	}
+
+	/**
+	 * Pass every complete byte on to the stream, keeping any partial byte
+	 */
+	public void drainTo(OutputStream os) throws IOException {
+		spill();
+		os.write(bytes, 0, length);
+		drained += length;
+		length = 0;
+	}
+
+	/**
+	 * The bytes written, with any partial byte padded with zero bits.  The
+	 * writer itself is left as it is.
+	 */
+	public byte[] toByteArray() {
+		spill();
+		byte[] copy = Arrays.copyOf(bytes, length + (accBits > 0 ? 1 : 0));
+		if (accBits > 0)
+			copy[length] = (byte) (acc << (8 - accBits));
+		return copy;
+	}
+
+	public void reset() {
+		length = 0;
+		drained = 0;
+		acc = 0;
+		accBits = 0;
+	}
+
+	/**
+	 * Move whole bytes out of the accumulator
+	 */
+	private void spill() {
+		int count = accBits >> 3;
+		if (length + count > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		while (accBits >= 8) {
+			accBits -= 8;
+			bytes[length++] = (byte) (acc >>> accBits);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package uk.co.labbookpages;
+// Memory mapped Wav file reader
+// Companion to WavFile for reading large recordings quickly
+
+// Reads the same files WavFile does, but the data chunk is memory mapped
+// and whole runs of frames are decoded at a time straight into float
+// analysis windows. Samples of up to 24 bits decode to exactly the values
+// WavFile gives.
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class MappedWavFile implements Closeable
+{
+	// Pass as the channel to read the average of all channels
+	public final static int DOWNMIX = -1;
+
+	private final static int FMT_CHUNK_ID = 0x20746D66;
+	private final static int DATA_CHUNK_ID = 0x61746164;
+	private final static int RIFF_CHUNK_ID = 0x46464952;
+	private final static int RIFF_TYPE_ID = 0x45564157;
+
+	// Largest part of the data chunk mapped at once, a mapping is limited to 2GB
+	private final static long MAX_MAPPING_BYTES = 1 << 30;
+
+	private FileChannel channel;			// Channel the data chunk is mapped from, null once closed
+	private long dataOffset;				// File position of the first frame
+	private long numFrames;					// Number of frames within the data section
+	private int bytesPerSample;			// Number of bytes required to store a single sample
+	private double floatScale;				// Scaling factor used for int -> float conversion
+	private double floatOffset;			// Offset factor used for int -> float conversion
+	private double[] unsigned8;			// 8 bit samples decode through this table
+
+	// Wav Header
+	private int numChannels;
+	private long sampleRate;
+	private int blockAlign;
+	private int validBits;
+
+	// Mapping
+	private MappedByteBuffer mapping;	// Currently mapped part of the data chunk
+	private long mappingFrame;				// First frame in the mapping
+	private long mappingFrames;			// Number of frames in the mapping
+	private byte[] bytes;					// Raw bytes of the frames being decoded
+	private double[] mix;					// Decoded samples of the frames being decoded
+	private long frameCounter;				// Current number of frames read
+
+	// Cannot instantiate MappedWavFile directly, must use openWavFile()
+	private MappedWavFile()
+	{
+	}
+
+	public int getNumChannels()
+	{
+		return numChannels;
+	}
+
+	public long getNumFrames()
+	{
+		return numFrames;
+	}
+
+	public long getFramesRemaining()
+	{
+		return numFrames - frameCounter;
+	}
+
+	public long getSampleRate()
+	{
+		return sampleRate;
+	}
+
+	public int getValidBits()
+	{
+		return validBits;
+	}
+
+	public static MappedWavFile openWavFile(Path file) throws IOException, WavFileException
+	{
+		MappedWavFile wavFile = new MappedWavFile();
+		wavFile.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try
+		{
+			wavFile.readHeader();
+		}
+		catch (IOException | WavFileException | RuntimeException e)
+		{
+			wavFile.close();
+			throw e;
+		}
+		return wavFile;
+	}
+
+	private void readHeader() throws IOException, WavFileException
+	{
+		ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		long fileSize = channel.size();
+
+		// Read the first 12 bytes of the file
+		if (read(header, 0, 12) != 12) throw new WavFileException("Not enough wav file bytes for header");
+
+		// Check the header bytes contains the correct signature
+		if (header.getInt(0) != RIFF_CHUNK_ID) throw new WavFileException("Invalid Wav Header data, incorrect riff chunk ID");
+		if (header.getInt(8) != RIFF_TYPE_ID) throw new WavFileException("Invalid Wav Header data, incorrect riff type ID");
+
+		// Check that the file size matches the number of bytes listed in header
+		long chunkSize = header.getInt(4) & 0xFFFFFFFFL;
+		if (fileSize != chunkSize+8) {
+			throw new WavFileException("Header chunk size (" + chunkSize + ") does not match file size (" + fileSize + ")");
+		}
+
+		boolean foundFormat = false;
+		long position = 12;
+
+		// Search for the Format and Data Chunks
+		while (true)
+		{
+			// Read the first 8 bytes of the chunk (ID and chunk size)
+			int bytesRead = read(header, position, 8);
+			if (bytesRead == -1) throw new WavFileException("Reached end of file without finding format chunk");
+			if (bytesRead != 8) throw new WavFileException("Could not read chunk header");
+			position += 8;
+
+			int chunkID = header.getInt(0);
+			chunkSize = header.getInt(4) & 0xFFFFFFFFL;
+
+			// Word align the chunk size
+			long numChunkBytes = (chunkSize%2 == 1) ? chunkSize+1 : chunkSize;
+
+			if (chunkID == FMT_CHUNK_ID)
+			{
+				foundFormat = true;
+
+				if (read(header, position, 16) != 16) throw new WavFileException("Could not read format chunk");
+
+				// Check this is uncompressed data
+				int compressionCode = header.getShort(0) & 0xFFFF;
+				if (compressionCode != 1) throw new WavFileException("Compression Code " + compressionCode + " not supported");
+
+				// Extract the format information
+				numChannels = header.getShort(2) & 0xFFFF;
+				sampleRate = header.getInt(4) & 0xFFFFFFFFL;
+				blockAlign = header.getShort(12) & 0xFFFF;
+				validBits = header.getShort(14) & 0xFFFF;
+
+				if (numChannels == 0) throw new WavFileException("Number of channels specified in header is equal to zero");
+				if (blockAlign == 0) throw new WavFileException("Block Align specified in header is equal to zero");
+				if (validBits < 2) throw new WavFileException("Valid Bits specified in header is less than 2");
+				if (validBits > 32) throw new WavFileException("Valid Bits specified in header is greater than 32, this is not supported");
+
+				// Calculate the number of bytes required to hold 1 sample
+				bytesPerSample = (validBits + 7) / 8;
+				if (bytesPerSample * numChannels != blockAlign)
+					throw new WavFileException("Block Align does not agree with bytes required for validBits and number of channels");
+
+				position += numChunkBytes;
+			}
+			else if (chunkID == DATA_CHUNK_ID)
+			{
+				if (foundFormat == false) throw new WavFileException("Data chunk found before Format chunk");
+
+				if (chunkSize % blockAlign != 0) throw new WavFileException("Data Chunk size is not multiple of Block Align");
+				if (position + chunkSize > fileSize) throw new WavFileException("Not enough data available");
+
+				dataOffset = position;
+				numFrames = chunkSize / blockAlign;
+				break;
+			}
+			else
+			{
+				// If an unknown chunk ID is found, just skip over the chunk data
+				position += numChunkBytes;
+			}
+		}
+
+		// Same conversion to a normalised value as WavFile
+		if (validBits > 8)
+		{
+			// Signed, a power of two, so multiplying by the reciprocal is exact
+			floatOffset = 0;
+			floatScale = 1L << (validBits - 1);
+		}
+		else
+		{
+			// Unsigned, table every value so there is no division per sample
+			floatOffset = -1;
+			floatScale = 0.5 * ((1 << validBits) - 1);
+			unsigned8 = new double[256];
+			for (int v=0 ; v<256 ; v++) unsigned8[v] = floatOffset + (double) v / floatScale;
+		}
+
+		bytes = new byte[0];
+		mix = new double[0];
+		frameCounter = 0;
+	}
+
+	private int read(ByteBuffer buffer, long position, int length) throws IOException
+	{
+		// through Buffer, so it also runs on Java 8 when built with a later JDK
+		((Buffer) buffer).clear().limit(length);
+		int total = 0;
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position + total);
+			if (read == -1) return total == 0 ? -1 : total;
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Read frames into a float window, taking one channel or, with
+	 * DOWNMIX, the average of all of them.
+	 * @return the number of frames read, 0 at the end of the data
+	 */
+	public int readFrames(float[] sampleBuffer, int offset, int numFramesToRead, int channelToRead) throws IOException
+	{
+		if (channel == null) throw new IOException("Cannot read from closed MappedWavFile instance");
+		if (channelToRead != DOWNMIX && (channelToRead < 0 || channelToRead >= numChannels))
+			throw new IllegalArgumentException("Channel " + channelToRead + " out of range, file has " + numChannels);
+
+		int frames = (int) Math.min(numFramesToRead, numFrames - frameCounter);
+		int done = 0;
+		while (done < frames)
+		{
+			if (frameCounter >= mappingFrame + mappingFrames) map(frameCounter);
+
+			int n = (int) Math.min(frames - done, mappingFrame + mappingFrames - frameCounter);
+			decode(n, channelToRead);
+			for (int i=0 ; i<n ; i++) sampleBuffer[offset + done + i] = (float) mix[i];
+
+			done += n;
+			frameCounter += n;
+		}
+
+		return frames;
+	}
+
+	public int readFrames(float[] sampleBuffer, int numFramesToRead, int channelToRead) throws IOException
+	{
+		return readFrames(sampleBuffer, 0, numFramesToRead, channelToRead);
+	}
+
+	private void map(long frame) throws IOException
+	{
+		long maxFrames = Math.max(1, MAX_MAPPING_BYTES / blockAlign);
+		mappingFrame = frame;
+		mappingFrames = Math.min(numFrames - frame, maxFrames);
+		mapping = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + frame * blockAlign, mappingFrames * blockAlign);
+	}
+
+	/**
+	 * Decode the next n frames of the mapping into mix
+	 */
+	private void decode(int n, int channelToRead)
+	{
+		int length = n * blockAlign;
+		if (bytes.length < length) bytes = new byte[length];
+		if (mix.length < n) mix = new double[n];
+
+		((Buffer) mapping).position((int) ((frameCounter - mappingFrame) * blockAlign));
+		mapping.get(bytes, 0, length);
+
+		Arrays.fill(mix, 0, n, 0.0);
+		if (channelToRead == DOWNMIX && numChannels > 1)
+		{
+			for (int c=0 ; c<numChannels ; c++) accumulate(c * bytesPerSample, n);
+			for (int i=0 ; i<n ; i++) mix[i] /= numChannels;
+		}
+		else
+		{
+			accumulate(channelToRead == DOWNMIX ? 0 : channelToRead * bytesPerSample, n);
+		}
+	}
+
+	/**
+	 * Add one channel's samples, starting at byte pos, to mix
+	 */
+	private void accumulate(int pos, int n)
+	{
+		byte[] b = bytes;
+		double[] m = mix;
+		int step = blockAlign;
+		double scale = 1.0 / floatScale;
+
+		switch (bytesPerSample)
+		{
+			case 1:
+				for (int i=0 ; i<n ; i++, pos+=step) m[i] += unsigned8[b[pos] & 0xFF];
+				break;
+			case 2:
+				for (int i=0 ; i<n ; i++, pos+=step) m[i] += ((b[pos] & 0xFF) | b[pos+1] << 8) * scale;
+				break;
+			case 3:
+				for (int i=0 ; i<n ; i++, pos+=step) m[i] += ((b[pos] & 0xFF) | (b[pos+1] & 0xFF) << 8 | b[pos+2] << 16) * scale;
+				break;
+			default:
+				for (int i=0 ; i<n ; i++, pos+=step) m[i] += ((b[pos] & 0xFF) | (b[pos+1] & 0xFF) << 8 | (b[pos+2] & 0xFF) << 16 | b[pos+3] << 24) * scale;
+				break;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// The mapping itself is released once it is garbage collected
+		mapping = null;
+		if (channel != null)
+		{
+			channel.close();
+			channel = null;
+		}
+	}
+}
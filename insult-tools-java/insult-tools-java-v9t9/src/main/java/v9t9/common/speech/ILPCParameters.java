@@ -14,6 +14,7 @@ import java.io.IOException;
 
 import ejs.base.utils.BitInputStream;
 import ejs.base.utils.BitOutputStream;
+import ejs.base.utils.BitWriter;
 
 /**
  * Marker interface for LPC parameters for a frame of speech.
@@ -36,6 +37,12 @@ public interface ILPCParameters {
 	 */
 	void toBytes(BitOutputStream bs) throws IOException;
 
+	/**
+	 * Pack the whole frame into the writer at once, in the same bit
+	 * layout as {@link #toBytes(BitOutputStream)}
+	 */
+	void writeFrame(BitWriter bw);
+
 	/**
 	 * Decode parameters from bytes
 	 * @return
@@ -11,13 +11,13 @@
 package v9t9.engine.speech;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 
 import v9t9.common.speech.ILPCParameters;
 import ejs.base.utils.BitInputStream;
 import ejs.base.utils.BitOutputStream;
+import ejs.base.utils.BitWriter;
 
 /**
  * @author  ejs
@@ -191,16 +191,42 @@ public class LPCParameters implements ILPCParameters {
 	}
 
 
+	/* (non-Javadoc)
+	 * @see v9t9.common.speech.ILPCParameters#writeFrame(ejs.base.utils.BitWriter)
+	 */
+	@Override
+	public void writeFrame(BitWriter bw) {
+		/* at most 50 bits, so the frame goes out in a single write */
+		long bits = energyParam & 0xf;
+		int count = 4;
+		if (energyParam != 0 && energyParam != 15) {
+			bits = bits << 7 | (repeat ? 1 << 6 : 0) | (pitchParam & 0x3f);
+			count += 7;
+			if (!repeat) {
+				bits = bits << 18
+					| (kParam[0] & 0x1f) << 13 | (kParam[1] & 0x1f) << 8
+					| (kParam[2] & 0xf) << 4 | (kParam[3] & 0xf);
+				count += 18;
+				if (pitchParam != 0) {
+					bits = bits << 21
+						| (kParam[4] & 0xf) << 17 | (kParam[5] & 0xf) << 13
+						| (kParam[6] & 0xf) << 9 | (kParam[7] & 0x7) << 6
+						| (kParam[8] & 0x7) << 3 | (kParam[9] & 0x7);
+					count += 21;
+				}
+			}
+		}
+		bw.writeBits(bits, count);
+	}
+
 	/* (non-Javadoc)
 	 * @see v9t9.common.speech.ILPCParameters#toBytes()
 	 */
 	@Override
 	public byte[] toBytes() throws IOException  {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		BitOutputStream bs = new BitOutputStream(bos);
-		toBytes(bs);
-		bs.close();
-		return bos.toByteArray();
+		BitWriter bw = new BitWriter(8);
+		writeFrame(bw);
+		return bw.toByteArray();
 	}
 
 
@@ -0,0 +1,179 @@
+/*
+  Autocorrelator.java
+
+  (c) 2012 Edward Swartz
+
+  All rights reserved. This program and the accompanying materials
+  are made available under the terms of the Eclipse Public License v1.0
+  which accompanies this distribution, and is available at
+  http://www.eclipse.org/legal/epl-v10.html
+ */
+package v9t9.engine.speech.encode;
+
+/**
+ * Short-time autocorrelation shared by the LPC engines.
+ * <p/>
+ * For a handful of lags the direct sum is cheapest.  When many lags are
+ * wanted (pitch detection, especially at 44.1 kHz) the autocorrelation is
+ * taken from the power spectrum instead (Wiener-Khinchin), using a radix-2
+ * FFT whose twiddles are computed once per transform size.  The cheaper of
+ * the two is picked on every call from the sample and lag counts.
+ * <p/>
+ * Instances hold scratch space, so each engine needs its own.
+ */
+public class Autocorrelator {
+
+	/* Relative cost of one FFT butterfly vs. one multiply-add of the direct sum */
+	private static final int FFT_COST = 6;
+
+	private int size;
+	private int bits;
+	private double[] cos, sin;
+	private int[] bitrev;
+	private double[] re, im;
+
+	/**
+	 * Compute r[k] = sum(i = 0 .. n-k-1) x[offs+i] * x[offs+i+k]
+	 * for 0 <= k <= maxLag (clipped to r.length - 1).  Lags at or
+	 * beyond n are zero.
+	 */
+	public void autocorrelate(float[] x, int offs, int n, float[] r, int maxLag) {
+		maxLag = Math.min(r.length - 1, maxLag);
+		if (maxLag < 0)
+			return;
+		if (n <= 0) {
+			for (int k = 0; k <= maxLag; k++)
+				r[k] = 0.0f;
+			return;
+		}
+
+		if (useFFT(n, maxLag))
+			fftAutocorrelate(x, offs, n, r, maxLag);
+		else
+			directAutocorrelate(x, offs, n, r, maxLag);
+	}
+
+	/**
+	 * Tell whether the transform is expected to beat the direct sum
+	 */
+	static boolean useFFT(int n, int maxLag) {
+		int lags = Math.min(maxLag, n - 1) + 1;
+		long direct = (long) lags * n - (long) lags * (lags - 1) / 2;
+
+		int fftSize = fftSize(n, maxLag);
+		int log2 = Integer.numberOfTrailingZeros(fftSize);
+		/* one forward and one inverse transform */
+		long fft = 2L * FFT_COST * (fftSize / 2) * log2 + fftSize;
+		return fft < direct;
+	}
+
+	/**
+	 * Smallest power of two that avoids circular wrap-around for the lags wanted
+	 */
+	private static int fftSize(int n, int maxLag) {
+		int need = n + Math.min(maxLag, n - 1) + 1;
+		int size = Integer.highestOneBit(need);
+		if (size < need)
+			size <<= 1;
+		return Math.max(2, size);
+	}
+
+	private static void directAutocorrelate(float[] x, int offs, int n, float[] r, int maxLag) {
+		int i, k;
+		for (k = 0; k <= maxLag; k++, n--) {
+			r[k] = 0.0f;
+			for (i = 0; i < n; i++)
+				r[k] += x[i + offs] * x[i + offs + k];
+		}
+	}
+
+	private void fftAutocorrelate(float[] x, int offs, int n, float[] r, int maxLag) {
+		int i;
+		int N = fftSize(n, maxLag);
+		prepare(N);
+
+		for (i = 0; i < n; i++) {
+			re[i] = x[i + offs];
+			im[i] = 0.0;
+		}
+		for (; i < N; i++) {
+			re[i] = im[i] = 0.0;
+		}
+
+		fft(re, im);
+
+		/* power spectrum; it is real and even, so a forward transform inverts it */
+		for (i = 0; i < N; i++) {
+			re[i] = re[i] * re[i] + im[i] * im[i];
+			im[i] = 0.0;
+		}
+
+		fft(re, im);
+
+		int lags = Math.min(maxLag, n - 1);
+		double scale = 1.0 / N;
+		for (i = 0; i <= lags; i++)
+			r[i] = (float) (re[i] * scale);
+		for (; i <= maxLag; i++)
+			r[i] = 0.0f;
+	}
+
+	/**
+	 * Build twiddles, bit reversal table and scratch for a transform size
+	 */
+	private void prepare(int N) {
+		if (N == size)
+			return;
+
+		size = N;
+		bits = Integer.numberOfTrailingZeros(N);
+		cos = new double[N / 2];
+		sin = new double[N / 2];
+		for (int i = 0; i < N / 2; i++) {
+			cos[i] = Math.cos(2 * Math.PI * i / N);
+			sin[i] = -Math.sin(2 * Math.PI * i / N);
+		}
+		bitrev = new int[N];
+		for (int i = 0; i < N; i++) {
+			bitrev[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+		re = new double[N];
+		im = new double[N];
+	}
+
+	/**
+	 * In-place iterative radix-2 decimation-in-time FFT
+	 */
+	private void fft(double[] re, double[] im) {
+		int N = size;
+		int i, j, len, half, step, t;
+		double tr, ti, wr, wi;
+
+		for (i = 0; i < N; i++) {
+			j = bitrev[i];
+			if (j > i) {
+				tr = re[i]; re[i] = re[j]; re[j] = tr;
+				ti = im[i]; im[i] = im[j]; im[j] = ti;
+			}
+		}
+
+		for (len = 2; len <= N; len <<= 1) {
+			half = len >> 1;
+			step = N / len;
+			for (i = 0; i < N; i += len) {
+				for (j = 0, t = 0; j < half; j++, t += step) {
+					wr = cos[t];
+					wi = sin[t];
+					int a = i + j;
+					int b = a + half;
+					tr = re[b] * wr - im[b] * wi;
+					ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+}
@@ -19,6 +19,13 @@ public interface ILPCEngine {
 
 	
 	LPCAnalysisFrame analyze(float[] x, int offs, int len);
+
+	/**
+	 * Analyze into a caller-supplied frame, so a single frame can be reused
+	 * for a whole recording.  The frame must have been created for this
+	 * engine's order.
+	 */
+	void analyze(float[] x, int offs, int len, LPCAnalysisFrame frame);
 	
 	void synthesize( float[] y, int offs, int len, int playbackHz, LPCAnalysisFrame frame);
 
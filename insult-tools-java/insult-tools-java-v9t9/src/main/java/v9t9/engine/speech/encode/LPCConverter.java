@@ -20,17 +20,35 @@ import v9t9.engine.speech.RomTables;
  */
 public class LPCConverter {
 
+	/* built once, immutable, so shared by every converter and thread */
+	private static final Quantizer PITCH = new Quantizer(RomTables.pitchtable);
+	private static final Quantizer ENERGY = new Quantizer(RomTables.energytable);
+	private static final Quantizer[] K = new Quantizer[RomTables.ktable.length];
+	static {
+		for (int k = 0; k < K.length; k++)
+			K[k] = new Quantizer(RomTables.ktable[k]);
+	}
+
 	public LPCConverter() {
 		
 	}
 	public ILPCParameters apply(LPCAnalysisFrame results) {
+		LPCParameters params = new LPCParameters();
+		apply(results, params);
+		return params;
+	}
+
+	/**
+	 * Quantize into existing parameters, so they can be reused frame after frame
+	 */
+	public void apply(LPCAnalysisFrame results, LPCParameters params) {
 		boolean voiced = results.invPitch != 0;
 		
-		LPCParameters params = new LPCParameters();
+		params.repeat = false;
 		if (voiced) {
 			//int pVal = (int) Math.max(0x1000, Math.min(0xA000, ((float)results.invPitch*hertz/origHz*256)));
 			int pVal = (int) Math.max(0x1000, Math.min(0xA000, results.pitch*256));
-			params.pitchParam = lookup(RomTables.pitchtable, pVal);
+			params.pitchParam = PITCH.lookup(pVal);
 			params.pitch = RomTables.pitchtable[params.pitchParam];
 		} else {
 			params.pitch = 0;
@@ -38,50 +56,18 @@ public class LPCConverter {
 		}
 		
 		int eVal = (int) (Math.min(0x7fc0, (int) (results.power * results.powerScale * 0x7fbf)));
-		params.energyParam = lookup(RomTables.energytable, eVal);
+		params.energyParam = ENERGY.lookup(eVal);
 		params.energy = RomTables.energytable[params.energyParam];
 		
 		int max = Math.min(results.coefs.length, voiced ? 10 : 4);
 		for (int k = 0; k < max; k++) {
 			int kVal = (int) (Math.max(-1.0f, Math.min(1.0f, results.coefs[k + results.coefsOffs])) * 32767);
-			params.kParam[k] = lookup(RomTables.ktable[k], kVal);
+			params.kParam[k] = K[k].lookup(kVal);
 			params.kVal[k] = RomTables.ktable[k][params.kParam[k]];
 		}
 		for (int k = max; k < 10; k++) {
 			params.kParam[k] = 0;
 			params.kVal[k] = 0;
 		}
-		
-		return params;
-	}
-
-	private int lookup(short[] ks, int fk) {
-		int diff = Integer.MAX_VALUE;
-		int matchIdx = 0;
-		int idx = 0;
-		for (short k : ks) {
-			int curdiff = Math.abs(k - fk);
-			if (curdiff < diff) {
-				matchIdx = idx;
-				diff = curdiff;
-			}
-			idx++;
-		}
-		return matchIdx;
-	}
-	
-	private int lookup(int[] ks, int fk) {
-		int diff = Integer.MAX_VALUE;
-		int matchIdx = 0;
-		int idx = 0;
-		for (int k : ks) {
-			int curdiff = Math.abs(k - fk);
-			if (curdiff < diff) {
-				matchIdx = idx;
-				diff = curdiff;
-			}
-			idx++;
-		}
-		return matchIdx;
 	}
 }
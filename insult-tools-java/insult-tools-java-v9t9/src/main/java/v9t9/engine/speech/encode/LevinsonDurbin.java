@@ -0,0 +1,71 @@
+/*
+  LevinsonDurbin.java
+
+  (c) 2012 Edward Swartz
+
+  All rights reserved. This program and the accompanying materials
+  are made available under the terms of the Eclipse Public License v1.0
+  which accompanies this distribution, and is available at
+  http://www.eclipse.org/legal/epl-v10.html
+ */
+package v9t9.engine.speech.encode;
+
+/**
+ * Solves the symmetric Toeplitz normal equations of linear prediction,
+ * <pre>
+ *   sum(j) r[|i-j|] * a[j] = r[i+1],   0 <= i < order
+ * </pre>
+ * in O(order^2) by the Levinson-Durbin recursion, rather than building
+ * and inverting the full matrix.  The residual prediction error falls out
+ * of the recursion for free.
+ * <p/>
+ * Instances hold scratch space, so each engine needs its own.
+ */
+public class LevinsonDurbin {
+
+	private final int order;
+	private final float[] prev;
+
+	public LevinsonDurbin(int order) {
+		this.order = order;
+		this.prev = new float[order];
+	}
+
+	/**
+	 * Find the predictor coefficients for the autocorrelation r[0..order].
+	 * @param r autocorrelation, at least order + 1 entries
+	 * @param a receives the coefficients in a[0..order-1]; any left
+	 * unsolved (when the error reaches zero) are zero
+	 * @return the remaining prediction error, r[0] - sum(a[j] * r[j+1]),
+	 * never negative
+	 */
+	public float solve(float[] r, float[] a) {
+		int i, j;
+		float err, k;
+
+		for (i = 0; i < order; i++)
+			a[i] = 0.0f;
+
+		err = r[0];
+		for (i = 0; i < order; i++) {
+			if (err <= 0.0f)
+				break;
+
+			/* reflection coefficient for this stage */
+			k = r[i + 1];
+			for (j = 0; j < i; j++)
+				k -= a[j] * r[i - j];
+			k /= err;
+
+			/* update the lower-order predictor */
+			System.arraycopy(a, 0, prev, 0, i);
+			for (j = 0; j < i; j++)
+				a[j] = prev[j] - k * prev[i - 1 - j];
+			a[i] = k;
+
+			err *= 1.0f - k * k;
+		}
+
+		return Math.max(0.0f, err);
+	}
+}
@@ -10,6 +10,8 @@
  */
 package v9t9.engine.speech.encode;
 
+import java.util.Arrays;
+
 import v9t9.engine.speech.RomTables;
 
 /**
@@ -41,6 +43,13 @@ public class OpenLPCEngine implements ILPCEngine {
 	float Oldper, OldG, Oldk[];
 	float b[], bp[], f[];
 
+	/* analysis scratch, reused from frame to frame */
+	private final float[] aw, ar, ak;
+	private final float[] pd, pk, pr;
+	private final float[] da, dat;
+	private final float[] ib, ibp, iff;
+	private final Autocorrelator autocorrelator = new Autocorrelator();
+
 	private int order;
 
 	private int FS;
@@ -68,6 +77,18 @@ public class OpenLPCEngine implements ILPCEngine {
 		bp = new float[order + 1];
 		f = new float[order + 1];
 
+		aw = new float[MAXWINDOW];
+		ar = new float[order + 1];
+		ak = new float[order + 1];
+		pd = new float[MAXWINDOW / DOWN];
+		pk = new float[PITCHORDER + 1];
+		pr = new float[MAXPER + 1];
+		da = new float[order + 1];
+		dat = new float[order + 1];
+		ib = new float[PITCHORDER + 1];
+		ibp = new float[PITCHORDER + 1];
+		iff = new float[PITCHORDER + 1];
+
 		init();
 	}
 
@@ -94,24 +115,12 @@ public class OpenLPCEngine implements ILPCEngine {
 		pitchctr = 0;
 	}
 	private void auto_correll(float[] w, int n, int p, float[] r) {
-		int i, k;
-
-		p = Math.min(r.length - 1, p);
-		for (k = 0; k <= MAXPER; k++, n--) {
-			r[k] = 0.0f;
-			for (i = 0; i < n; i++)
-				r[k] += w[i] * w[i + k];
-		}
+		/* all lags up to MAXPER; long enough at high rates to go via FFT */
+		autocorrelator.autocorrelate(w, 0, n, r, MAXPER);
 	}
 	private void auto_correl2(float[] w, int n, int p, float[] r) {
-		int i, k;
-
 		p = Math.min(r.length - 1, p);
-		for (k = 0; k <= p; k++, n--) {
-			r[k] = 0.0f;
-			for (i = 0; i < n; i++)
-				r[k] += w[i] * w[i + k];
-		}
+		autocorrelator.autocorrelate(w, 0, n, r, p);
 	}
 
 	private float durbin(float[] r, int p, float[] k) {
@@ -119,8 +128,8 @@ public class OpenLPCEngine implements ILPCEngine {
 		int i, j;
 		float e;
 
-		float[] a = new float[order + 1];
-		float[] at = new float[order + 1];
+		float[] a = da;
+		float[] at = dat;
 
 		p = Math.min(order, p);
 		for (i = 0; i <= p; i++)
@@ -152,9 +161,9 @@ public class OpenLPCEngine implements ILPCEngine {
 
 	private void inverse_filter(float[] w, float[] k) {
 		int i, j;
-		float b[] = new float[PITCHORDER + 1];
-		float bp[] = new float[PITCHORDER + 1];
-		float f[] = new float[PITCHORDER + 1];
+		float b[] = ib;
+		float bp[] = ibp;
+		float f[] = iff;
 
 		for (i = 0; i <= PITCHORDER; i++)
 			b[i] = f[i] = bp[i] = 0.0f;
@@ -173,9 +182,9 @@ public class OpenLPCEngine implements ILPCEngine {
 	private float calc_pitch(float[] w, int offs, int len) {
 		int i, j, rpos;
 		float rmax;
-		float d[] = new float[MAXWINDOW / DOWN];
-		float k[] = new float[PITCHORDER + 1];
-		float r[] = new float[MAXPER + 1];
+		float d[] = pd;
+		float k[] = pk;
+		float r[] = pr;
 		float rval, rm, rp;
 		float a, b, c, x, y;
 
@@ -316,11 +325,20 @@ public class OpenLPCEngine implements ILPCEngine {
 	@Override
 	public LPCAnalysisFrame analyze(float[] x, int offs, int len) {
 		LPCAnalysisFrame frame = new LPCAnalysisFrame(params.getOrder());
+		analyze(x, offs, len, frame);
+		return frame;
+	}
+
+	/* (non-Javadoc)
+	 * @see v9t9.engine.speech.encode.ILPCEngine#analyze(float[], int, int, v9t9.engine.speech.encode.LPCAnalysisFrame)
+	 */
+	@Override
+	public void analyze(float[] x, int offs, int len, LPCAnalysisFrame frame) {
 		int i;
-		float w[] = new float[MAXWINDOW];
-		float r[] = new float[order + 1];
+		float w[] = aw;
+		float r[] = ar;
 		float per, gain;
-		float k[] = new float[order + 1];
+		float k[] = ak;
 
 	    System.arraycopy(x, offs, s, 0, len);
 	       
@@ -330,6 +348,8 @@ public class OpenLPCEngine implements ILPCEngine {
 	        w[i] = s[i] * h[i];   
 	    
 	    auto_correl2(w, buflen, order, r);
+	    /* durbin() may bail out early; leave no stale coefficients behind */
+	    Arrays.fill(k, 0f);
 		gain = durbin(r, order, k);
 	    
 	    ///
@@ -358,6 +378,7 @@ public class OpenLPCEngine implements ILPCEngine {
 		frame.pitch = per != 0 ? (frame.invPitch * params.getPlaybackHz() / params.getHertz() ) : 0;
 		frame.power = gain;
 		frame.powerScale = 1.0f;
+		frame.coefsOffs = 0;
 		for (i = 0; i < order; i++) {
 			// frame.coefs[i] = Math.max(-1f, Math.min(1f, k[i+1]));
 			frame.coefs[i] = k[i + 1];
@@ -365,8 +386,6 @@ public class OpenLPCEngine implements ILPCEngine {
 
 		//System.arraycopy(s, framelen, s, 0, buflen - framelen);
 		System.arraycopy(y, framelen, y, 0, buflen - framelen);
-
-		return frame;
 	}
 
 	/* (non-Javadoc)
@@ -0,0 +1,94 @@
+/*
+  Quantizer.java
+
+  (c) 2012 Edward Swartz
+
+  All rights reserved. This program and the accompanying materials
+  are made available under the terms of the Eclipse Public License v1.0
+  which accompanies this distribution, and is available at
+  http://www.eclipse.org/legal/epl-v10.html
+ */
+package v9t9.engine.speech.encode;
+
+import java.util.Arrays;
+
+/**
+ * Nearest-value lookup into one of the ROM tables.
+ * <p/>
+ * Gives the same answer as scanning the table for the smallest
+ * |table[i] - value|, where the first index wins a tie, but in O(log n):
+ * the table's distinct values are sorted once, and the midpoints between
+ * neighbours become thresholds to binary search.  Instances are immutable,
+ * so one can be shared by every thread.
+ */
+public class Quantizer {
+
+	/* values at or above thresholds[i] quantize past sorted entry i */
+	private final int[] thresholds;
+	/* table index each sorted entry quantizes to */
+	private final int[] indices;
+
+	public Quantizer(short[] table) {
+		this(widen(table));
+	}
+
+	public Quantizer(int[] table) {
+		if (table.length == 0)
+			throw new IllegalArgumentException("empty table");
+
+		/* sort indices by value; the sort is stable, so the first index
+		 * of a duplicated value comes first and is the one kept */
+		Integer[] order = new Integer[table.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(table[a], table[b]));
+
+		int[] values = new int[table.length];
+		int[] firsts = new int[table.length];
+		int count = 0;
+		for (Integer idx : order) {
+			if (count > 0 && values[count - 1] == table[idx])
+				continue;
+			values[count] = table[idx];
+			firsts[count] = idx;
+			count++;
+		}
+
+		indices = Arrays.copyOf(firsts, count);
+		thresholds = new int[count - 1];
+		for (int i = 0; i < count - 1; i++) {
+			int lo = values[i];
+			int gap = values[i + 1] - lo;
+			if (gap % 2 != 0) {
+				/* no value is equally near both */
+				thresholds[i] = lo + (gap + 1) / 2;
+			} else {
+				/* the midpoint is a tie, which goes to the lower index */
+				int mid = lo + gap / 2;
+				thresholds[i] = indices[i] < indices[i + 1] ? mid + 1 : mid;
+			}
+		}
+	}
+
+	/**
+	 * Index of the table entry nearest the value
+	 */
+	public int lookup(int value) {
+		int lo = 0, hi = thresholds.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (thresholds[mid] <= value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return indices[lo];
+	}
+
+	private static int[] widen(short[] table) {
+		int[] wide = new int[table.length];
+		for (int i = 0; i < table.length; i++)
+			wide[i] = table[i];
+		return wide;
+	}
+}
@@ -24,17 +24,16 @@ import java.util.Arrays;
 public class RtLPCEngine implements ILPCEngine {
 	private float[] corr;
 	private float[] Zs;
-	private Matrix R;
-	private Matrix res;
+	private LevinsonDurbin solver;
 	private int order;
 	private LPCEncoderParams params;
+	private final Autocorrelator autocorrelator = new Autocorrelator();
 	
 	public RtLPCEngine(LPCEncoderParams params) {
 		this.params = params;
 		this.order = params.getOrder();
 		
-    	R = new Matrix( order, order );
-        res = new Matrix( order, order );
+    	solver = new LevinsonDurbin( order );
         Zs = new float[order];
 		this.Zss = new float[order];
 
@@ -88,9 +87,17 @@ public class RtLPCEngine implements ILPCEngine {
 	@Override
 	public LPCAnalysisFrame analyze( float[] x, int offs, int len)
 	{
-	    int i, j;
-	    
 	    LPCAnalysisFrame results = new LPCAnalysisFrame(order);
+	    analyze( x, offs, len, results );
+	    return results;
+	}
+
+	/* (non-Javadoc)
+	 * @see v9t9.engine.speech.encode.ILPCEngine#analyze(float[], int, int, v9t9.engine.speech.encode.LPCAnalysisFrame)
+	 */
+	@Override
+	public void analyze( float[] x, int offs, int len, LPCAnalysisFrame results)
+	{
 	    results.coefsOffs = 1;
 	    
 	    if (this.corr == null || this.corr.length != len) {
@@ -101,33 +108,24 @@ public class RtLPCEngine implements ILPCEngine {
 	    results.invPitch = autocorrelate( x, offs, len, corr );
 	    results.pitch = results.invPitch != 0 ? (results.invPitch * params.getPlaybackHz() / params.getHertz() ) : 0;
 	    
-	    // construct the R matrix
-	    for( i = 0; i < order; i++ )
-	        for( j = 0; j < order; j++ )
-	             R.set(i, j, corr[Math.abs((int)(i-j))]);
-
-	    // invert R
-	    R.invert( res );
-
-	    // find the coefficients A = P*R^(-1)
-	    results.coefs = new float[order + 1];
-	    for( i = 0; i < order; i++ )
-	    {
-	        results.coefs[i] = 0.0f;
-	        for( j = 0; j < order; j++ )
-	        	results.coefs[i] += R.at(i, j) * corr[1+j];
+	    // find the coefficients A = P*R^(-1); R is Toeplitz, so solve it directly
+	    if (results.coefs == null || results.coefs.length != order + 1) {
+	    	results.coefs = new float[order + 1];
 	    }
+	    float error = solver.solve( corr, results.coefs );
 
-	    // do the linear prediction to find residue
-	    results.power = predict( x, offs, len, results) ;
+	    // the solver hands back the prediction error, so only run the
+	    // linear prediction over the frame when the residue is wanted
+	    if( results.residue != null )
+	    	predict( x, offs, len, results );
+	    results.power = (float)Math.sqrt(error) / (len - order);
 	    results.powerScale = params.getFrameSize() ;
-	    
-	    return results;
 	}
 	
 
-	static int numGraphs;
-	static StringBuilder graphData = new StringBuilder();
+	// graph state is per engine, so engines can run on separate threads
+	private int numGraphs;
+	private final StringBuilder graphData = new StringBuilder();
 	static boolean showGraph = false;
 	
 	//-----------------------------------------------------------------------------
@@ -140,20 +138,12 @@ public class RtLPCEngine implements ILPCEngine {
 	    int n, i, j, k;
 
 	    // refer to pp. 89 for variable name consistency
-	    for ( n = 0; n < len; n++ )
-	    {
-	        temp = 0.0f;
-	        for ( i = 0; i < len - offs - n - 1; i++ )
-	            temp += x[i + offs] * x[i+offs+n];
-	        y[n] = temp;
-	        
-	        if (showGraph) {
-	        	graphData.append(n + " " + y[n] + "\n");
-	        	
-	        }
-	    }
+	    // every lag of the frame, over the first len - offs - 1 samples
+	    autocorrelator.autocorrelate( x, offs, len - offs - 1, y, len - 1 );
 	    
 	    if (showGraph) {
+	    	for ( n = 0; n < len; n++ )
+	    		graphData.append(n + " " + y[n] + "\n");
 	    	graphData.append("\n");
 	    	numGraphs++;
 	    	if (numGraphs == 63) {
@@ -179,7 +169,7 @@ public class RtLPCEngine implements ILPCEngine {
 	    // why?
 	    j = (int)(len * 0.02);
 	    // loop to the point y stops descreasing
-	    while( y[j] < temp && j < len )
+	    while( j < len && y[j] < temp )
 	    {
 	        temp = y[j];
 	        j++;
@@ -204,8 +194,8 @@ public class RtLPCEngine implements ILPCEngine {
 	    for( i = 0; i < len; i++ )
 	        y[i] *= (k-i) * norm;
 
-	    if( (y[j] / y[0]) < 0.4 ) j = 0;
 	    if( j > len / 2 ) j = 0;
+	    if( (y[j] / y[0]) < 0.4 ) j = 0;
 
 	    // we return the pitch information
 	    return (float) j;